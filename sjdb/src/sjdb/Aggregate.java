@@ -0,0 +1,91 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements an Aggregate operator, which groups the tuples of
+ * its input on the group-by attributes and computes the aggregate calls
+ * over each group, giving one output tuple per group. Without group-by
+ * attributes the whole input is one group.
+ *
+ * A partial aggregate is evaluated below a join to shrink its input, and
+ * its results are combined by a final aggregate above the join.
+ */
+public class Aggregate extends UnaryOperator {
+	private List<Attribute> groupBy;
+	private List<AggregateCall> calls;
+	private boolean partial;
+
+	/**
+	 * Create a new aggregate
+	 * @param input Child operator
+	 * @param groupBy Group-by attributes
+	 * @param calls Aggregate calls
+	 */
+	public Aggregate(Operator input, List<Attribute> groupBy, List<AggregateCall> calls) {
+		this(input, groupBy, calls, false);
+	}
+
+	/**
+	 * Create a new aggregate
+	 * @param input Child operator
+	 * @param groupBy Group-by attributes
+	 * @param calls Aggregate calls
+	 * @param partial true if the results are combined by another aggregate
+	 */
+	public Aggregate(Operator input, List<Attribute> groupBy, List<AggregateCall> calls, boolean partial) {
+		super(input);
+		this.groupBy = groupBy;
+		this.calls = calls;
+		this.partial = partial;
+	}
+
+	/**
+	 * @return the group-by attributes
+	 */
+	public List<Attribute> getGroupBy() {
+		return this.groupBy;
+	}
+
+	/**
+	 * @return the aggregate calls
+	 */
+	public List<AggregateCall> getCalls() {
+		return this.calls;
+	}
+
+	/**
+	 * @return true if this is a partial aggregate below a join
+	 */
+	public boolean isPartial() {
+		return this.partial;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/**
+	 * @return the operator name, group-by attributes and calls, without the input
+	 */
+	public String label() {
+		String ret = (this.partial ? "PARTIAL " : "") + "AGGREGATE [";
+		String sep = "";
+		for (Attribute a : this.groupBy) {
+			ret += sep + a.getName();
+			sep = ",";
+		}
+		ret += ";";
+		sep = "";
+		for (AggregateCall c : this.calls) {
+			ret += sep + c.toString();
+			sep = ",";
+		}
+		return ret + "]";
+	}
+
+	public String toString() {
+		return label() + " (" + getInput().toString() + ")";
+	}
+}
@@ -0,0 +1,62 @@
+package sjdb;
+
+/**
+ * This class represents an aggregate function applied to an attribute
+ * (or, for COUNT(*), to whole tuples) in an Aggregate operator. The result
+ * of the call is an attribute of the aggregate's output, by default named
+ * after the call, as in COUNT(*) or SUM(age).
+ */
+public class AggregateCall {
+	private AggregateFunction function;
+	private Attribute attribute;
+	private String name;
+
+	/**
+	 * Create a new aggregate call, whose result is named after the call
+	 * @param function Aggregate function
+	 * @param attribute Attribute aggregated, or null for COUNT(*)
+	 */
+	public AggregateCall(AggregateFunction function, Attribute attribute) {
+		this.function = function;
+		this.attribute = attribute;
+		this.name = function + "(" + (attribute == null ? "*" : attribute.getName()) + ")";
+	}
+
+	/**
+	 * Create a new aggregate call with a given name for its result
+	 * @param function Aggregate function
+	 * @param attribute Attribute aggregated, or null for COUNT(*)
+	 * @param name Name of the result attribute
+	 */
+	public AggregateCall(AggregateFunction function, Attribute attribute, String name) {
+		this.function = function;
+		this.attribute = attribute;
+		this.name = name;
+	}
+
+	/**
+	 * @return the aggregate function
+	 */
+	public AggregateFunction getFunction() {
+		return this.function;
+	}
+
+	/**
+	 * @return the attribute aggregated, or null for COUNT(*)
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * @return the name of the result attribute
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public String toString() {
+		String call = this.function + "(" + (this.attribute == null ? "*" : this.attribute.getName()) + ")";
+		return call.equals(this.name) ? call : call + " AS " + this.name;
+	}
+}
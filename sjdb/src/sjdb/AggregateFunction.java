@@ -0,0 +1,24 @@
+package sjdb;
+
+/**
+ * The aggregate functions that may be computed over the tuples of each
+ * group of an Aggregate.
+ */
+public enum AggregateFunction {
+	/**
+	 * The number of tuples, or of values of an attribute
+	 */
+	COUNT,
+	/**
+	 * The sum of the values of an attribute
+	 */
+	SUM,
+	/**
+	 * The smallest value of an attribute
+	 */
+	MIN,
+	/**
+	 * The largest value of an attribute
+	 */
+	MAX
+}
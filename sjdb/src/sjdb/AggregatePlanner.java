@@ -0,0 +1,139 @@
+package sjdb;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Plans a query with an Aggregate below its root projection. The join optimisers only
+ * know about selects, products and joins, so the input of the aggregate is optimised on
+ * its own, projected on the group-by attributes and the aggregated attributes, and the
+ * aggregate and the root projection are put back on top of the optimised input.
+ *
+ * When all the aggregated attributes come from one input of the top join, a partial
+ * aggregate can be evaluated on that input before the join, grouped on its join attribute
+ * and on the group-by attributes that it contains; the final aggregate above the join then
+ * combines the partial results (a COUNT becomes a SUM of the partial counts). The partial
+ * aggregate is only kept if the Estimator finds the plan cheaper with it, which is the
+ * case when it collapses many tuples into few groups before a join that would carry them.
+ */
+public class AggregatePlanner {
+
+    /**
+     * @return true if the plan has an aggregate, directly or below its root projection
+     */
+    public static boolean hasAggregate(Operator plan) {
+        return aggregateOf(plan) != null;
+    }
+
+    /**
+     * Optimise a plan with an aggregate, using the given optimiser for its input
+     * @param plan Canonical query plan
+     * @param optimiser Join optimiser, applied to a plan without an aggregate
+     * @return Optimised plan
+     */
+    public static Operator optimise(Operator plan, Function<Operator, Operator> optimiser) {
+        Aggregate aggregate = aggregateOf(plan);
+        if(aggregate == null) {
+            return optimiser.apply(plan);
+        }
+        List<Attribute> needed = new ArrayList<>(aggregate.getGroupBy());
+        for(AggregateCall call : aggregate.getCalls()) {
+            if(call.getAttribute() != null && !needed.contains(call.getAttribute())) {
+                needed.add(call.getAttribute());
+            }
+        }
+        // COUNT(*) on its own needs no attribute of the input
+        Operator input = aggregate.getInput();
+        if(!needed.isEmpty()) {
+            input = new Project(input, needed);
+        }
+        input = optimiser.apply(input);
+
+        Estimator estimator = new Estimator();
+        Operator best = new Aggregate(input, aggregate.getGroupBy(), aggregate.getCalls());
+        int lowestCost = estimator.estimate(best);
+        Operator pushed = pushDown(input, aggregate);
+        if(pushed != null) {
+            int cost = estimator.estimate(pushed);
+            if(cost < lowestCost) {
+                best = pushed;
+            }
+        }
+        if(plan instanceof Project) {
+            best = new Project(best, ((Project) plan).getAttributes());
+        }
+        best.accept(estimator);
+        return best;
+    }
+
+    private static Aggregate aggregateOf(Operator plan) {
+        if(plan instanceof Project) {
+            plan = ((Project) plan).getInput();
+        }
+        return plan instanceof Aggregate ? (Aggregate) plan : null;
+    }
+
+    /*
+     * the plan with a partial aggregate on one input of the top join and the final
+     * aggregate above the join, or null if the aggregate cannot be split there
+     */
+    private static Operator pushDown(Operator input, Aggregate aggregate) {
+        Operator op = input;
+        while(op instanceof Project) {
+            op = ((Project) op).getInput();
+        }
+        if(!(op instanceof Join)) {
+            return null;
+        }
+        Join join = (Join) op;
+        Operator best = null;
+        // 索引嵌套循环连接的右输入必须是基本表的扫描，不能在它上面加聚合
+        for(int side=0;side<2;side++) {
+            if(side == 1 && join.getMethod() == JoinMethod.INDEX_NESTED_LOOP) {
+                continue;
+            }
+            Operator pushed = split(join, side, aggregate);
+            if(pushed != null) {
+                Estimator estimator = new Estimator();
+                if(best == null || estimator.estimate(pushed) < estimator.estimate(best)) {
+                    best = pushed;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static Operator split(Join join, int side, Aggregate aggregate) {
+        Operator input = join.inputs.get(side);
+        List<Attribute> attrs = input.getOutput().getAttributes();
+        for(AggregateCall call : aggregate.getCalls()) {
+            if(call.getAttribute() != null && !attrs.contains(call.getAttribute())) {
+                return null;
+            }
+        }
+        Predicate p = join.getPredicate();
+        Attribute joinAttr = side == 0 ? p.getLeftAttribute() : p.getRightAttribute();
+
+        List<Attribute> groupBy = new ArrayList<>();
+        for(Attribute a : aggregate.getGroupBy()) {
+            if(attrs.contains(a)) {
+                groupBy.add(a);
+            }
+        }
+        if(!groupBy.contains(joinAttr)) {
+            groupBy.add(joinAttr);
+        }
+        List<AggregateCall> partialCalls = new ArrayList<>();
+        List<AggregateCall> finalCalls = new ArrayList<>();
+        for(AggregateCall call : aggregate.getCalls()) {
+            partialCalls.add(call);
+            AggregateFunction function = call.getFunction() == AggregateFunction.COUNT ?
+                    AggregateFunction.SUM : call.getFunction();
+            finalCalls.add(new AggregateCall(function, new Attribute(call.getName()), call.getName()));
+        }
+        Operator partial = new Aggregate(input, groupBy, partialCalls, true);
+        Operator left = side == 0 ? partial : join.getLeft();
+        Operator right = side == 1 ? partial : join.getRight();
+        return new Aggregate(new Join(left, right, p, join.getMethod()), aggregate.getGroupBy(), finalCalls);
+    }
+}
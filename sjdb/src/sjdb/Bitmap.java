@@ -0,0 +1,319 @@
+package sjdb;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compressed bitmap of tuple numbers, organised like a Roaring bitmap: the
+ * high 16 bits of a tuple number select a chunk, and each chunk stores its
+ * low 16 bits either as a sorted array (when the chunk is sparse) or as a
+ * bitmap of 65536 bits (when it is dense). Intersections and unions work
+ * chunk by chunk, so empty chunks cost nothing.
+ */
+public class Bitmap {
+	/**
+	 * A chunk with more than this many tuples is stored as a bitmap
+	 */
+	private static final int ARRAY_LIMIT = 4096;
+	private TreeMap<Integer, Chunk> chunks;
+
+	/**
+	 * Create an empty bitmap
+	 */
+	public Bitmap() {
+		this.chunks = new TreeMap<Integer, Chunk>();
+	}
+
+	/**
+	 * Add a tuple number to the bitmap
+	 * @param tuple Tuple number
+	 */
+	public void add(int tuple) {
+		Integer key = tuple >>> 16;
+		Chunk chunk = this.chunks.get(key);
+		if (chunk == null) {
+			chunk = new Chunk();
+			this.chunks.put(key, chunk);
+		}
+		chunk.add((char) tuple);
+	}
+
+	/**
+	 * Add the tuple numbers from..to (inclusive) to the bitmap. A range that
+	 * fills a dense chunk is set 64 tuples at a time.
+	 * @param from First tuple number
+	 * @param to Last tuple number
+	 */
+	public void add(int from, int to) {
+		if (from > to) {
+			return;
+		}
+		for (int key = from >>> 16; key <= to >>> 16; key++) {
+			Chunk chunk = this.chunks.get(key);
+			if (chunk == null) {
+				chunk = new Chunk();
+				this.chunks.put(key, chunk);
+			}
+			chunk.add(key == from >>> 16 ? from & 0xFFFF : 0, key == to >>> 16 ? to & 0xFFFF : 0xFFFF);
+		}
+	}
+
+	/**
+	 * @return true if the bitmap contains the given tuple number
+	 */
+	public boolean contains(int tuple) {
+		Chunk chunk = this.chunks.get(tuple >>> 16);
+		return chunk != null && chunk.contains((char) tuple);
+	}
+
+	/**
+	 * @return the number of tuples in the bitmap
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (Chunk chunk : this.chunks.values()) {
+			count += chunk.size;
+		}
+		return count;
+	}
+
+	/**
+	 * Return the intersection of this bitmap and another
+	 * @param other The other bitmap
+	 * @return A new bitmap with the tuples in both
+	 */
+	public Bitmap and(Bitmap other) {
+		Bitmap ret = new Bitmap();
+		for (Map.Entry<Integer, Chunk> e : this.chunks.entrySet()) {
+			Chunk chunk = other.chunks.get(e.getKey());
+			if (chunk != null) {
+				Chunk and = e.getValue().and(chunk);
+				if (and.size > 0) {
+					ret.chunks.put(e.getKey(), and);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Return the number of tuples in both this bitmap and another, without
+	 * building their intersection
+	 * @param other The other bitmap
+	 * @return Cardinality of the intersection
+	 */
+	public int andCardinality(Bitmap other) {
+		int count = 0;
+		for (Map.Entry<Integer, Chunk> e : this.chunks.entrySet()) {
+			Chunk chunk = other.chunks.get(e.getKey());
+			if (chunk != null) {
+				count += e.getValue().andCardinality(chunk);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the union of this bitmap and another
+	 * @param other The other bitmap
+	 * @return A new bitmap with the tuples in either
+	 */
+	public Bitmap or(Bitmap other) {
+		Bitmap ret = new Bitmap();
+		for (Map.Entry<Integer, Chunk> e : this.chunks.entrySet()) {
+			Chunk chunk = other.chunks.get(e.getKey());
+			ret.chunks.put(e.getKey(), chunk == null ? e.getValue().copy() : e.getValue().or(chunk));
+		}
+		for (Map.Entry<Integer, Chunk> e : other.chunks.entrySet()) {
+			if (!this.chunks.containsKey(e.getKey())) {
+				ret.chunks.put(e.getKey(), e.getValue().copy());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the number of 64-bit words stored, a measure of the work of
+	 * combining this bitmap with another
+	 */
+	public int words() {
+		int words = 0;
+		for (Chunk chunk : this.chunks.values()) {
+			words += chunk.bits != null ? chunk.bits.length : (chunk.size + 3) / 4;
+		}
+		return words;
+	}
+
+	/**
+	 * The low 16 bits of the tuples in one chunk, as a sorted array or a bitmap
+	 */
+	private static class Chunk {
+		private char[] array = new char[4];
+		private long[] bits = null;
+		private int size = 0;
+
+		private boolean contains(char low) {
+			if (this.bits != null) {
+				return (this.bits[low >>> 6] & (1L << low)) != 0;
+			}
+			return indexOf(low) >= 0;
+		}
+
+		private int indexOf(char low) {
+			return java.util.Arrays.binarySearch(this.array, 0, this.size, low);
+		}
+
+		private void add(char low) {
+			if (this.bits != null) {
+				if (!contains(low)) {
+					this.bits[low >>> 6] |= 1L << low;
+					this.size++;
+				}
+				return;
+			}
+			int i = indexOf(low);
+			if (i >= 0) {
+				return;
+			}
+			if (this.size == ARRAY_LIMIT) {
+				toBits();
+				add(low);
+				return;
+			}
+			i = -i - 1;
+			if (this.size == this.array.length) {
+				this.array = java.util.Arrays.copyOf(this.array, Math.min(2 * this.size, ARRAY_LIMIT));
+			}
+			System.arraycopy(this.array, i, this.array, i + 1, this.size - i);
+			this.array[i] = low;
+			this.size++;
+		}
+
+		private void add(int lo, int hi) {
+			if (this.bits == null && this.size + (hi - lo + 1) <= ARRAY_LIMIT) {
+				for (int low = lo; low <= hi; low++) {
+					add((char) low);
+				}
+				return;
+			}
+			if (this.bits == null) {
+				toBits();
+			}
+			int first = lo >>> 6;
+			int last = hi >>> 6;
+			for (int w = first; w <= last; w++) {
+				long mask = -1L;
+				if (w == first) {
+					mask &= -1L << (lo & 63);
+				}
+				if (w == last) {
+					mask &= -1L >>> (63 - (hi & 63));
+				}
+				this.size += Long.bitCount(mask & ~this.bits[w]);
+				this.bits[w] |= mask;
+			}
+		}
+
+		private int andCardinality(Chunk other) {
+			int count = 0;
+			if (this.bits != null && other.bits != null) {
+				for (int i = 0; i < 1024; i++) {
+					count += Long.bitCount(this.bits[i] & other.bits[i]);
+				}
+				return count;
+			}
+			Chunk small = this.bits == null ? this : other;
+			Chunk large = small == this ? other : this;
+			for (int i = 0; i < small.size; i++) {
+				if (large.contains(small.array[i])) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		private void toBits() {
+			this.bits = new long[1024];
+			for (int i = 0; i < this.size; i++) {
+				this.bits[this.array[i] >>> 6] |= 1L << this.array[i];
+			}
+			this.array = null;
+		}
+
+		private Chunk copy() {
+			Chunk ret = new Chunk();
+			ret.size = this.size;
+			ret.array = this.array == null ? null : this.array.clone();
+			ret.bits = this.bits == null ? null : this.bits.clone();
+			return ret;
+		}
+
+		private Chunk and(Chunk other) {
+			Chunk ret = new Chunk();
+			if (this.bits != null && other.bits != null) {
+				ret.bits = new long[1024];
+				for (int i = 0; i < 1024; i++) {
+					ret.bits[i] = this.bits[i] & other.bits[i];
+					ret.size += Long.bitCount(ret.bits[i]);
+				}
+				if (ret.size <= ARRAY_LIMIT) {
+					ret.toArray();
+				}
+				return ret;
+			}
+			// at least one side is a sorted array: keep its members that the other contains
+			Chunk small = this.bits == null ? this : other;
+			Chunk large = small == this ? other : this;
+			for (int i = 0; i < small.size; i++) {
+				if (large.contains(small.array[i])) {
+					ret.add(small.array[i]);
+				}
+			}
+			return ret;
+		}
+
+		private Chunk or(Chunk other) {
+			Chunk ret = new Chunk();
+			if (this.bits == null && other.bits == null && this.size + other.size <= ARRAY_LIMIT) {
+				for (int i = 0; i < this.size; i++) {
+					ret.add(this.array[i]);
+				}
+				for (int i = 0; i < other.size; i++) {
+					ret.add(other.array[i]);
+				}
+				return ret;
+			}
+			ret.bits = new long[1024];
+			ret.array = null;
+			for (Chunk c : new Chunk[] { this, other }) {
+				if (c.bits != null) {
+					for (int i = 0; i < 1024; i++) {
+						ret.bits[i] |= c.bits[i];
+					}
+				} else {
+					for (int i = 0; i < c.size; i++) {
+						ret.bits[c.array[i] >>> 6] |= 1L << c.array[i];
+					}
+				}
+			}
+			for (int i = 0; i < 1024; i++) {
+				ret.size += Long.bitCount(ret.bits[i]);
+			}
+			return ret;
+		}
+
+		private void toArray() {
+			char[] array = new char[Math.max(4, this.size)];
+			int n = 0;
+			for (int i = 0; i < 1024; i++) {
+				long word = this.bits[i];
+				while (word != 0) {
+					array[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			this.array = array;
+			this.bits = null;
+		}
+	}
+}
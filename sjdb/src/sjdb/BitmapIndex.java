@@ -0,0 +1,63 @@
+package sjdb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class represents a bitmap index on a low-cardinality attribute of
+ * a named relation: one compressed Bitmap of tuple numbers per value of
+ * the attribute.
+ *
+ * A bitmap index declared in the catalogue file has no bitmaps until they
+ * are added; until then the Estimator treats it like any other index and
+ * assumes T(R)/V(R,A) matching tuples per value.
+ */
+public class BitmapIndex extends Index {
+	private Map<String, Bitmap> bitmaps;
+
+	/**
+	 * Create a new, empty bitmap index
+	 * @param attribute Indexed attribute
+	 */
+	public BitmapIndex(Attribute attribute) {
+		super(attribute, IndexType.BITMAP);
+		this.bitmaps = new HashMap<String, Bitmap>();
+	}
+
+	/**
+	 * Record that the given tuple has the given value; called through
+	 * Catalogue.addBitmapTuple() so that cached plans are invalidated
+	 * @param value Value of the indexed attribute
+	 * @param tuple Tuple number
+	 */
+	void add(String value, int tuple) {
+		Bitmap bitmap = this.bitmaps.get(value);
+		if (bitmap == null) {
+			bitmap = new Bitmap();
+			this.bitmaps.put(value, bitmap);
+		}
+		bitmap.add(tuple);
+	}
+
+	/**
+	 * @return true if bitmaps have been added to the index
+	 */
+	public boolean isLoaded() {
+		return !this.bitmaps.isEmpty();
+	}
+
+	/**
+	 * Return the bitmap of the tuples with the given value: an empty
+	 * bitmap if the index is loaded but no tuple has the value, or null if
+	 * the index is not loaded
+	 * @param value Value of the indexed attribute
+	 * @return Bitmap of the matching tuples
+	 */
+	public Bitmap getBitmap(String value) {
+		if (!isLoaded()) {
+			return null;
+		}
+		Bitmap bitmap = this.bitmaps.get(value);
+		return bitmap == null ? new Bitmap() : bitmap;
+	}
+}
@@ -0,0 +1,73 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements a BitmapScan operator, which feeds the tuples of a
+ * NamedRelation that satisfy a conjunction of predicates of the form
+ * attr=value into a query plan. Each predicate's attribute has a bitmap
+ * index; the bitmaps of the values are intersected before any tuple is
+ * fetched, so only the tuples that satisfy every predicate are read.
+ */
+public class BitmapScan extends Operator {
+	private NamedRelation relation;
+	private List<Predicate> predicates;
+
+	/**
+	 * Create a new bitmap scan
+	 * @param relation Named relation to be scanned
+	 * @param predicates Predicates of the form attr=value, each on an
+	 * attribute with a bitmap index
+	 */
+	public BitmapScan(NamedRelation relation, List<Predicate> predicates) {
+		this.relation = relation;
+		this.predicates = predicates;
+	}
+
+	/**
+	 * Return the named relation to be scanned
+	 * @return Named relation to be scanned
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the predicates whose bitmaps are intersected
+	 * @return Predicates of the form attr=value
+	 */
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	/**
+	 * Return the bitmap index used for the given predicate
+	 * @param predicate One of the predicates of this scan
+	 * @return Bitmap index on the predicate's attribute
+	 */
+	public BitmapIndex getIndex(Predicate predicate) {
+		return (BitmapIndex) this.relation.getIndex(predicate.getLeftAttribute());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder preds = new StringBuilder();
+		for (Predicate p : this.predicates) {
+			if (preds.length() > 0) {
+				preds.append(" AND ");
+			}
+			preds.append(p.toString());
+		}
+		return "BITMAPSCAN [" + preds + "] (" + this.relation.toString() + ")";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
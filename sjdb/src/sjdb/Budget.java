@@ -0,0 +1,43 @@
+package sjdb;
+
+/**
+ * This class limits the effort an optimiser may spend searching for a
+ * join order, either as a number of milliseconds or as a number of
+ * complete plans costed. A limit of zero means no limit, so the default
+ * budget allows an exhaustive search.
+ */
+public class Budget {
+	private long millis;
+	private int plans;
+
+	/**
+	 * Create an unlimited budget
+	 */
+	public Budget() {
+		this(0, 0);
+	}
+
+	/**
+	 * Create a budget with the given limits
+	 * @param millis Time limit in milliseconds, or 0 for no time limit
+	 * @param plans Maximum number of plans to cost, or 0 for no limit
+	 */
+	public Budget(long millis, int plans) {
+		this.millis = millis;
+		this.plans = plans;
+	}
+
+	/**
+	 * Return true if a search that started at the given time and has
+	 * costed the given number of plans must stop.
+	 * @param start Start time of the search, from System.currentTimeMillis()
+	 * @param plansCosted Number of plans costed so far
+	 * @return true if the budget has run out
+	 */
+	public boolean isExhausted(long start, int plansCosted) {
+		if (this.plans > 0 && plansCosted >= this.plans) {
+			return true;
+		}
+		return this.millis > 0 && System.currentTimeMillis() - start >= this.millis;
+	}
+}
@@ -0,0 +1,50 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements an operator that reads a materialised result held
+ * in a ResultCache, in place of the subplan that computed it. Like a scan,
+ * it has no inputs; its output is the result as it was stored.
+ */
+public class CachedResult extends Operator {
+	private String key;
+	private Relation result;
+
+	/**
+	 * Create a new read of a cached result
+	 * @param key Fingerprint of the result, as given by Fingerprint.ofResult()
+	 * @param result The stored result
+	 */
+	public CachedResult(String key, Relation result) {
+		this.key = key;
+		this.result = result;
+	}
+
+	@Override
+	public List<Operator> getInputs() {
+		return null;
+	}
+
+	/**
+	 * @return the fingerprint of the result
+	 */
+	public String getKey() {
+		return this.key;
+	}
+
+	/**
+	 * @return the stored result
+	 */
+	public Relation getResult() {
+		return this.result;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+
+	public String toString() {
+		return "CACHED [" + this.key + "]";
+	}
+}
@@ -1,6 +1,9 @@
 package sjdb;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -8,6 +11,7 @@ import java.util.HashMap;
  * 
  * - creating new NamedRelations
  * - creating new Attributes
+ * - creating new Indexes
  * 
  * The catalogue maintains a directory of NamedRelations and
  * Attributes, indexed by name.
@@ -16,6 +20,10 @@ import java.util.HashMap;
  * the attributes therein is stored on the relations or attributes,
  * and not in the catalogue.
  * 
+ * Whenever a NamedRelation, its statistics or its indexes change, the
+ * catalogue passes the name of the relation to its change listeners, so
+ * that the plans and results cached for it can be invalidated.
+ * 
  * @author nmg
  *
  */
@@ -23,11 +31,29 @@ public class Catalogue {
 	
 	private HashMap<String, NamedRelation> relations;
 	private HashMap<String, Attribute> attributes;
+	private List<Consumer<String>> listeners;
 
 
 	public Catalogue() {
 		this.relations = new HashMap<String, NamedRelation>();
 		this.attributes = new HashMap<String, Attribute>();
+		this.listeners = new ArrayList<Consumer<String>>();
+	}
+	
+	/**
+	 * Add a listener that is given the name of each NamedRelation that
+	 * changes, such as PlanCache.invalidate() or ResultCache.invalidate().
+	 * 
+	 * @param listener 关系变化时调用
+	 */
+	public void addChangeListener(Consumer<String> listener) {
+		listeners.add(listener);
+	}
+	
+	private void changed(String relName) {
+		for (Consumer<String> listener : listeners) {
+			listener.accept(relName);
+		}
 	}
 	
 	/**
@@ -40,6 +66,7 @@ public class Catalogue {
 	public NamedRelation createRelation(String relName, int size) {
 		NamedRelation reln = new NamedRelation(relName, size);
 		relations.put(relName, reln);
+		changed(relName);
 		return reln;
 	}
 	
@@ -57,9 +84,149 @@ public class Catalogue {
 		Attribute attr = new Attribute(attName, values);
 		attributes.put(attName, attr);
 		relations.get(relName).addAttribute(attr);
+		changed(relName);
 		return attr;
 	}
 	
+	/**
+	 * Create a new Index of the specified type on an attribute of the
+	 * specified NamedRelation. A BITMAP index is created empty; its
+	 * bitmaps may be filled in through addBitmapTuple().
+	 * 
+	 * @param relName  关系名
+	 * @param attName  被索引的属性名
+	 * @param type     索引类型
+	 * @return
+	 */
+	public Index createIndex(String relName, String attName, IndexType type) {
+		Index index = type == IndexType.BITMAP ?
+				new BitmapIndex(attributes.get(attName)) : new Index(attributes.get(attName), type);
+		relations.get(relName).addIndex(index);
+		changed(relName);
+		return index;
+	}
+	
+	/**
+	 * Record in the bitmap index on an attribute of the specified
+	 * NamedRelation that the given tuple has the given value.
+	 * 
+	 * @param relName  关系名
+	 * @param attName  被索引的属性名
+	 * @param value    属性的取值
+	 * @param tuple    tuple的序号
+	 * @throws DatabaseException if the attribute has no bitmap index
+	 */
+	public void addBitmapTuple(String relName, String attName, String value, int tuple) throws DatabaseException {
+		Index index = relations.get(relName).getIndex(getAttribute(attName));
+		if (!(index instanceof BitmapIndex)) {
+			throw new DatabaseException("Attribute " + attName + " of " + relName + " has no bitmap index");
+		}
+		((BitmapIndex) index).add(value, tuple);
+		changed(relName);
+	}
+	
+	/**
+	 * Declare an attribute of the specified NamedRelation as a key of it.
+	 * 
+	 * @param relName  关系名
+	 * @param attName  键的属性名
+	 */
+	public void createKey(String relName, String attName) {
+		relations.get(relName).addKey(attributes.get(attName));
+		changed(relName);
+	}
+	
+	/**
+	 * Add a value to the dictionary of an encoded attribute of the
+	 * specified NamedRelation.
+	 * 
+	 * @param relName  关系名
+	 * @param attName  属性名
+	 * @param value    属性的一个取值
+	 * @return the code of the value
+	 * @throws DatabaseException if the attribute is stored PLAIN, without a dictionary
+	 */
+	public int addDictionaryValue(String relName, String attName, String value) throws DatabaseException {
+		ColumnFormat format = relations.get(relName).getColumnFormat(attributes.get(attName));
+		if (format.getEncoding() == ColumnEncoding.PLAIN) {
+			throw new DatabaseException("Attribute " + attName + " of " + relName + " has no dictionary");
+		}
+		int code = format.addValue(value);
+		changed(relName);
+		return code;
+	}
+	
+	/**
+	 * Add a block to the zone map of the specified NamedRelation, creating
+	 * the zone map if the relation has none.
+	 * 
+	 * @param relName  关系名
+	 * @param tuples   块中tuple的数量
+	 * @return the index of the new block
+	 */
+	public int addZoneBlock(String relName, int tuples) {
+		NamedRelation reln = relations.get(relName);
+		if (reln.getZoneMap() == null) {
+			reln.setZoneMap(new ZoneMap());
+		}
+		changed(relName);
+		return reln.getZoneMap().addBlock(tuples);
+	}
+	
+	/**
+	 * Record the smallest and largest values and the null count of an
+	 * attribute in a block of the zone map of the specified NamedRelation.
+	 * 
+	 * @param relName  关系名
+	 * @param block    块的序号
+	 * @param attName  属性名
+	 * @param min      块中最小的值
+	 * @param max      块中最大的值
+	 * @param nulls    块中值为null的tuple数量
+	 */
+	public void addZoneSynopsis(String relName, int block, String attName, String min, String max, int nulls) {
+		relations.get(relName).getZoneMap().addSynopsis(block, attributes.get(attName), min, max, nulls);
+		changed(relName);
+	}
+	
+	/**
+	 * Create multi-column statistics on a group of attributes of the
+	 * specified NamedRelation. Dependencies between the attributes may be
+	 * added through addDependency().
+	 * 
+	 * @param relName  关系名
+	 * @param attNames 属性名
+	 * @param distinct 这些属性的值有多少种不同的组合，未知时为-1
+	 * @return
+	 */
+	public ColumnGroup createColumnGroup(String relName, List<String> attNames, int distinct) {
+		List<Attribute> attrs = new ArrayList<Attribute>();
+		for (String attName : attNames) {
+			attrs.add(attributes.get(attName));
+		}
+		ColumnGroup group = new ColumnGroup(attrs, distinct);
+		relations.get(relName).addColumnGroup(group);
+		changed(relName);
+		return group;
+	}
+	
+	/**
+	 * Record the degree of the functional dependency of one attribute on
+	 * another, in a column group of the specified NamedRelation.
+	 * 
+	 * @param relName  关系名
+	 * @param group    createColumnGroup()返回的属性组
+	 * @param from     决定属性名
+	 * @param to       被决定属性名
+	 * @param degree   依赖的程度，在0和1之间
+	 * @throws DatabaseException if either attribute is unknown
+	 */
+	public void addDependency(String relName, ColumnGroup group, String from, String to, double degree)
+			throws DatabaseException {
+		group.addDependency(getAttribute(from), getAttribute(to), degree);
+		changed(relName);
+	}
+	
 	/**
 	 * Return the NamedRelation with the specified name.
 	 * 
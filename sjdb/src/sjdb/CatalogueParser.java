@@ -1,5 +1,6 @@
 package sjdb;
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * This class parses a serialised system catalogue, and uses the
@@ -10,6 +11,31 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * An attribute may be followed by the type of an index on it (hash, btree or bitmap),
+ * as in <attr name>,<value count>,hash, and by key if it is a key of the
+ * relation, as in <attr name>,<value count>,btree,key
+ * 
+ * Multi-column statistics on a group of attributes of a relation are given
+ * after the relation as
+ * 
+ * <relation name>#<attr name>,<attr name>,...:<joint distinct count>:<attr name>><attr name>,<degree>:...
+ * 
+ * where the joint distinct count may be - if it is not known, and each
+ * a>b,degree is the degree of the functional dependency of b on a.
+ * 
+ * The values of the dictionary of an encoded attribute are given after the
+ * relation as
+ * 
+ * <relation name>$<attr name>:<value>:<value>:...
+ * 
+ * A block of the zone map of a relation is given after the relation as
+ * 
+ * <relation name>@<tuple count>:<attr name>,<min>,<max>,<null count>:...
+ * 
+ * with the smallest and largest values of each attribute in the block, and
+ * the number of its tuples where the attribute is null; blocks are given in
+ * the order in which they are stored.
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -35,7 +61,15 @@ public class CatalogueParser {
 
 		try {
 			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
+				if (line.split(":", 0)[0].contains("@")) {
+					parseBlock(line.split(":", 0));
+				} else if (line.split(":", 0)[0].contains("#")) {
+					parseColumnGroup(line.split(":", 0));
+				} else if (line.split(":", 0)[0].contains("$")) {
+					parseDictionary(line.split(":", 0));
+				} else {
+					parseRelation(line.split(":", 0));
+				}
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -53,10 +87,67 @@ public class CatalogueParser {
 		}
 	}
 
+	/**
+	 * Parse a block of a relation's zone map, given after the relation as
+	 * Relation@tuples:attr,min,max,nulls:...
+	 */
+	private void parseBlock(String[] parts) {
+		String[] header = parts[0].split("@", 0);
+		String reln = header[0];
+		int block = catalogue.addZoneBlock(reln, Integer.decode(header[1]).intValue());
+		
+		for (int i = 1; i < parts.length; i++) {
+			String[] syn = parts[i].split(",", 0);
+			catalogue.addZoneSynopsis(reln, block, syn[0], syn[1], syn[2], Integer.decode(syn[3]).intValue());
+		}
+	}
+
+	/**
+	 * Parse the multi-column statistics of a group of attributes, given as
+	 * Relation#attr,attr:distinct:attr>attr,degree:...
+	 */
+	private void parseColumnGroup(String[] parts) {
+		String[] header = parts[0].split("#", 0);
+		String reln = header[0];
+		int distinct = parts[1].trim().equals("-") ? -1 : Integer.decode(parts[1]).intValue();
+		ColumnGroup group = catalogue.createColumnGroup(reln, Arrays.asList(header[1].split(",", 0)), distinct);
+		for (int i = 2; i < parts.length; i++) {
+			String[] dep = parts[i].split(",", 0);
+			String[] attrs = dep[0].split(">", 0);
+			try {
+				catalogue.addDependency(reln, group, attrs[0], attrs[1], Double.parseDouble(dep[1]));
+			} catch (DatabaseException e) {
+				System.err.println(e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Parse the values of the dictionary of an attribute, given as
+	 * Relation$attr:value:value:...
+	 */
+	private void parseDictionary(String[] parts) {
+		String[] header = parts[0].split("\\$", 0);
+		for (int i = 1; i < parts.length; i++) {
+			try {
+				catalogue.addDictionaryValue(header[0], header[1], parts[i]);
+			} catch (DatabaseException e) {
+				System.err.println(e.toString());
+			}
+		}
+	}
+
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
 		int values = Integer.decode(parts[1]).intValue();
 		
 		catalogue.createAttribute(reln, attr, values);
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].trim().equalsIgnoreCase("key")) {
+				catalogue.createKey(reln, attr);
+			} else {
+				catalogue.createIndex(reln, attr, IndexType.valueOf(parts[i].trim().toUpperCase()));
+			}
+		}
 	}
 }
@@ -0,0 +1,655 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Regression checks for the optimisers, run from the sjdb directory as
+ * java sjdb.Checks; prints each failed check and exits with status 1 if
+ * there was one.
+ */
+public class Checks {
+	private static int failures = 0;
+
+	public static void main(String[] args) throws Exception {
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+
+		memoAgainstOptimiser(cat);
+		indexNestedLoop(cat);
+		saturatedCosts();
+		bitmaps();
+		batchSharing(cat);
+		unnesting(cat);
+		aggregatePushdown(cat);
+		rowGoal(cat);
+		runtimeFilters(cat);
+		starJoin();
+		triangle();
+		columnGroups();
+		lateMaterialisation();
+		planCache(cat);
+		resultCache();
+		dictionary();
+		zoneMaps();
+
+		if (failures > 0) {
+			System.out.println(failures + " CHECKS FAILED");
+			System.exit(1);
+		}
+		System.out.println("ALL CHECKS PASSED");
+	}
+
+	/*
+	 * the memo searches every join order, so its plan for each sample query
+	 * costs no more than the default or the randomised optimiser's, and
+	 * outputs the attributes of the canonical plan
+	 */
+	private static void memoAgainstOptimiser(Catalogue cat) throws Exception {
+		Estimator est = new Estimator();
+		for (int i = 1; i <= 5; i++) {
+			String query = new String(Files.readAllBytes(Paths.get("data/q" + i + ".txt")), "UTF-8");
+			Operator canonical = parse(cat, query);
+			Operator memo = new MemoOptimiser(cat).optimise(parse(cat, query));
+			Operator opt = new Optimiser(cat).optimise(parse(cat, query));
+			Operator random = new RandomisedOptimiser(cat).optimise(parse(cat, query));
+			long memoCost = est.estimate(memo);
+			check("memo: q" + i + " costs no more than the optimiser's plan", memoCost <= est.estimate(opt));
+			check("memo: q" + i + " costs no more than the randomised plan", memoCost <= est.estimate(random));
+			check("memo: q" + i + " joins instead of selecting over a product", !contains(memo, Product.class));
+			check("memo: q" + i + " outputs the attributes of the query",
+					new HashSet<String>(names(memo)).equals(new HashSet<String>(names(canonical))));
+		}
+	}
+
+	/*
+	 * an index nested loop join probes the index of its right relation once per
+	 * left tuple, so with a selective left input it costs less than the scan of
+	 * the right input it saves; the memo and the randomised optimiser both pick
+	 * it for q4, whose Research department has a few of the projects
+	 */
+	private static void indexNestedLoop(Catalogue cat) throws Exception {
+		Predicate research = new Predicate(new Attribute("deptname"), "Research");
+		Predicate runs = new Predicate(new Attribute("deptid"), new Attribute("dept"));
+		Estimator est = new Estimator();
+		Join probe = new Join(new Select(new Scan(cat.getRelation("Department")), research),
+				new Scan(cat.getRelation("Project")), runs, JoinMethod.INDEX_NESTED_LOOP);
+		Join hash = new Join(new Select(new Scan(cat.getRelation("Department")), research),
+				new Scan(cat.getRelation("Project")), runs, JoinMethod.HASH);
+		long probeCost = est.estimate(probe);
+		check("index join: selective left input takes off the cost of the right scan", est.joinCost(probe) < 0);
+		check("index join: costs less than a hash join of the same inputs", probeCost < est.estimate(hash));
+		Join unindexed = new Join(new Select(new Scan(cat.getRelation("Department")), research),
+				new Scan(cat.getRelation("Project")), new Predicate(new Attribute("deptid"), new Attribute("projname")),
+				JoinMethod.INDEX_NESTED_LOOP);
+		est.estimate(unindexed);
+		check("index join: needs an index on the right join attribute",
+				est.joinCost(unindexed) == Integer.MAX_VALUE);
+
+		String q4 = new String(Files.readAllBytes(Paths.get("data/q4.txt")), "UTF-8");
+		check("index join: memo picks it for q4",
+				methods(new MemoOptimiser(cat).optimise(parse(cat, q4))).contains(JoinMethod.INDEX_NESTED_LOOP));
+		check("index join: randomised optimiser picks it for q4",
+				methods(new RandomisedOptimiser(cat).optimise(parse(cat, q4))).contains(JoinMethod.INDEX_NESTED_LOOP));
+	}
+
+	/*
+	 * every optimiser still finds a plan when the costs of all its candidate
+	 * plans saturate at the largest int
+	 */
+	private static void saturatedCosts() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 100000);
+		cat.createAttribute("R", "a", 1);
+		cat.createAttribute("R", "b", 100000);
+		cat.createRelation("S", 100000);
+		cat.createAttribute("S", "x", 1);
+		cat.createAttribute("S", "y", 1);
+		cat.createRelation("T", 100000);
+		cat.createAttribute("T", "u", 1);
+		cat.createAttribute("T", "v", 100000);
+		String query = "SELECT *\nFROM R,S,T\nWHERE a=x,y=u";
+
+		check("saturated: optimiser finds a plan", new Optimiser(cat).optimise(parse(cat, query)) != null);
+		check("saturated: memo finds a plan", new MemoOptimiser(cat).optimise(parse(cat, query)) != null);
+		check("saturated: randomised optimiser finds a plan",
+				new RandomisedOptimiser(cat).optimise(parse(cat, query)) != null);
+		check("saturated: other optimiser finds a plan", new OtherOptimiser(cat).optimise(parse(cat, query)) != null);
+	}
+
+	/*
+	 * bitmaps agree with a BitSet of the same tuples, over sparse and dense
+	 * chunks and ranges that span chunks
+	 */
+	private static void bitmaps() {
+		Random random = new Random(1);
+		Bitmap[] bitmaps = new Bitmap[2];
+		BitSet[] sets = new BitSet[2];
+		for (int i = 0; i < 2; i++) {
+			bitmaps[i] = new Bitmap();
+			sets[i] = new BitSet();
+			// a sparse chunk, a dense one, and a range over the end of one chunk into the next
+			for (int j = 0; j < 1000; j++) {
+				int tuple = random.nextInt(65536);
+				bitmaps[i].add(tuple);
+				sets[i].set(tuple);
+			}
+			for (int j = 0; j < 20000; j++) {
+				int tuple = 65536 + random.nextInt(65536);
+				bitmaps[i].add(tuple);
+				sets[i].set(tuple);
+			}
+			int from = 3 * 65536 - 1000 * (i + 1);
+			int to = 3 * 65536 + 5000 * (i + 1);
+			bitmaps[i].add(from, to);
+			sets[i].set(from, to + 1);
+		}
+		BitSet and = (BitSet) sets[0].clone();
+		and.and(sets[1]);
+		BitSet or = (BitSet) sets[0].clone();
+		or.or(sets[1]);
+
+		check("bitmaps: cardinality", bitmaps[0].cardinality() == sets[0].cardinality());
+		check("bitmaps: and", bitmaps[0].and(bitmaps[1]).cardinality() == and.cardinality());
+		check("bitmaps: and cardinality", bitmaps[0].andCardinality(bitmaps[1]) == and.cardinality());
+		check("bitmaps: or", bitmaps[0].or(bitmaps[1]).cardinality() == or.cardinality());
+		boolean contains = true;
+		for (int tuple = 0; tuple < 4 * 65536; tuple += 7) {
+			contains = contains && bitmaps[0].contains(tuple) == sets[0].get(tuple);
+		}
+		check("bitmaps: contains", contains);
+	}
+
+	/*
+	 * a subplan under a runtime filter must not be shared with the same
+	 * subplan unfiltered: the second query keeps its projection of Department
+	 */
+	private static void batchSharing(Catalogue cat) throws Exception {
+		List<Operator> queries = new ArrayList<Operator>();
+		queries.add(parse(cat, "SELECT projname, deptname\nFROM Person, Project, Department\n" +
+				"WHERE persid=manager, dept=deptid, persname=\"Smith\""));
+		queries.add(parse(cat, "SELECT manager, deptid, deptname\nFROM Department"));
+		List<Operator> plans = new MultiQueryOptimiser(p -> new Optimiser(cat).optimise(p)).optimise(queries);
+
+		Operator second = plans.get(1);
+		check("batch: second query keeps its projection", second instanceof Project);
+		check("batch: second query outputs its attributes",
+				names(second).equals(Arrays.asList("manager", "deptid", "deptname")));
+		check("batch: second query is not filtered", !contains(second, RuntimeFilter.class));
+
+		// the cost without sharing is that of the queries before they read back cached results
+		String q4 = "SELECT projid\nFROM Project, Department\nWHERE dept=deptid, deptname=\"Research\"";
+		ResultCache results = new ResultCache(1000);
+		MultiQueryOptimiser mqo = new MultiQueryOptimiser(p -> new Optimiser(cat).optimise(p), p -> {
+			Operator read = results.substitute(p);
+			results.put(read);
+			return read;
+		});
+		plans = mqo.optimise(Arrays.asList(parse(cat, q4), parse(cat, q4)));
+		check("batch: repeated query reads back the result", plans.get(1) instanceof CachedResult);
+		check("batch: unshared cost is measured before results are read back",
+				mqo.getIndependentCost() == 2 * new Estimator().estimate(new Optimiser(cat).optimise(parse(cat, q4))));
+		check("batch: reading back a result costs less than computing it again",
+				mqo.getSharedCost() < mqo.getIndependentCost());
+	}
+
+	/*
+	 * counting the projects of each department collapses Project into a partial
+	 * count per dept below the join; the final aggregate sums those counts
+	 */
+	private static void aggregatePushdown(Catalogue cat) throws Exception {
+		String query = "SELECT deptname, COUNT(*)\nFROM Project, Department\nWHERE dept=deptid\nGROUP BY deptname";
+		Operator plan = new Optimiser(cat).optimise(parse(cat, query));
+		Aggregate last = find(plan, Aggregate.class);
+		Aggregate partial = find(last.getInput(), Aggregate.class);
+		check("aggregate: final aggregate above the join is not partial",
+				!last.isPartial() && last.getInput() instanceof Join);
+		check("aggregate: partial aggregate below the join", partial != null && partial.isPartial());
+		check("aggregate: partial aggregate groups Project on its join attribute",
+				partial != null && partial.getGroupBy().equals(Arrays.asList(new Attribute("dept"))));
+		check("aggregate: partial aggregate counts",
+				partial != null && partial.getCalls().get(0).getFunction() == AggregateFunction.COUNT);
+		AggregateCall sum = last.getCalls().get(0);
+		check("aggregate: COUNT(*) becomes SUM(COUNT(*))", sum.getFunction() == AggregateFunction.SUM
+				&& sum.getAttribute().equals(new Attribute("COUNT(*)")) && sum.getName().equals("COUNT(*)"));
+		check("aggregate: plan outputs the attributes of the query",
+				names(plan).equals(Arrays.asList("deptname", "COUNT(*)")));
+	}
+
+	/*
+	 * a hash join is cheapest for the whole of a join of Project and Department,
+	 * but must build its left input before its first tuple; under LIMIT 1 the
+	 * index nested loop join, which streams, is cheaper and replaces it
+	 */
+	private static void rowGoal(Catalogue cat) throws Exception {
+		String query = "SELECT projname, deptname\nFROM Project, Department\nWHERE dept=deptid";
+		Operator whole = new MemoOptimiser(cat).optimise(parse(cat, query));
+		check("row goal: hash join without a limit", methods(whole).equals(Arrays.asList(JoinMethod.HASH)));
+
+		Operator limited = LimitPlanner.optimise(parse(cat, query + "\nLIMIT 1"), p -> new MemoOptimiser(cat).optimise(p));
+		check("row goal: limit keeps its count", limited instanceof Limit && ((Limit) limited).getCount() == 1);
+		check("row goal: limit turns the hash join into an index nested loop join",
+				methods(limited).equals(Arrays.asList(JoinMethod.INDEX_NESTED_LOOP)));
+
+		Estimator est = new Estimator();
+		Operator hashLimited = new Limit(new MemoOptimiser(cat).optimise(parse(cat, query)), 1);
+		check("row goal: limit takes off the cost of the tuples not produced",
+				est.estimate(hashLimited) < est.estimate(whole));
+		check("row goal: index nested loop join costs less than the hash join under the limit",
+				est.estimate(hashLimited) > est.estimate(limited));
+	}
+
+	/*
+	 * an IN subquery is only turned into a join when it matches on a declared
+	 * key; manager has as many values as Department has tuples, but is no key
+	 */
+	private static void unnesting(Catalogue cat) throws Exception {
+		Operator key = parse(cat, "SELECT projname\nFROM Project\n" +
+				"WHERE dept IN (SELECT deptid FROM Department WHERE deptname=\"Research\")");
+		check("unnesting: subquery on a key becomes a join", !contains(key, SemiJoin.class));
+		check("unnesting: join keeps the estimate of the semi-join",
+				new Optimiser(cat).optimise(key).getOutput().getTupleCount() == 8);
+
+		Operator nonKey = parse(cat, "SELECT persname\nFROM Person\n" +
+				"WHERE persid IN (SELECT manager FROM Department)");
+		check("unnesting: subquery on a non-key stays a semi-join", contains(nonKey, SemiJoin.class));
+		check("unnesting: semi-join is kept in the optimised plan",
+				contains(new Optimiser(cat).optimise(nonKey), SemiJoin.class));
+	}
+
+	/*
+	 * a runtime filter is only built by a hash join, and only pushed down its
+	 * probe path: not into a materialised input, nor the build side of a join below
+	 */
+	private static void runtimeFilters(Catalogue cat) throws Exception {
+		Predicate smith = new Predicate(new Attribute("persname"), "Smith");
+		Predicate manages = new Predicate(new Attribute("persid"), new Attribute("manager"));
+		Predicate runs = new Predicate(new Attribute("deptid"), new Attribute("dept"));
+
+		Operator hash = new Join(new Select(new Scan(cat.getRelation("Person")), smith),
+				new Scan(cat.getRelation("Department")), manages, JoinMethod.HASH);
+		check("filters: hash join filters its probe side",
+				contains(new RuntimeFilterPlanner().plan(hash), RuntimeFilter.class));
+
+		Operator loop = new Join(new Select(new Scan(cat.getRelation("Person")), smith),
+				new Scan(cat.getRelation("Department")), manages, JoinMethod.NESTED_LOOP);
+		check("filters: nested loop join builds no filter",
+				!contains(new RuntimeFilterPlanner().plan(loop), RuntimeFilter.class));
+
+		Join inner = new Join(new Scan(cat.getRelation("Department")),
+				new Scan(cat.getRelation("Project")), runs, JoinMethod.HASH);
+		Operator nested = new Join(new Select(new Scan(cat.getRelation("Person")), smith),
+				inner, manages, JoinMethod.HASH);
+		new RuntimeFilterPlanner().plan(nested);
+		check("filters: no filter on the build side of a join below",
+				!contains(inner.getLeft(), RuntimeFilter.class));
+	}
+
+	/*
+	 * a star join reads its fact input last, after every dimension that a
+	 * runtime filter on the fact scan is built from
+	 */
+	private static void starJoin() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Sales", 1000000);
+		cat.createAttribute("Sales", "sprod", 10000);
+		cat.createAttribute("Sales", "sstore", 100);
+		cat.createAttribute("Sales", "amount", 1000);
+		cat.createRelation("Product", 10000);
+		cat.createAttribute("Product", "prodid", 10000);
+		cat.createAttribute("Product", "category", 50);
+		cat.createRelation("Store", 100);
+		cat.createAttribute("Store", "storeid", 100);
+		cat.createAttribute("Store", "region", 5);
+
+		Operator plan = new Optimiser(cat).optimise(parse(cat, "SELECT amount\nFROM Sales,Product,Store\n" +
+				"WHERE sprod=prodid,sstore=storeid,category=\"c1\",region=\"r1\""));
+		Operator star = plan instanceof Project ? ((Project) plan).getInput() : plan;
+		check("star: query is planned as a star join", star instanceof StarJoin);
+		if (star instanceof StarJoin) {
+			StarJoin join = (StarJoin) star;
+			check("star: fact input is the last input", join.getFact() == join.inputs.get(join.inputs.size() - 1));
+			check("star: fact scan is filtered", contains(join.getFact(), RuntimeFilter.class));
+			check("star: dimensions are not filtered", !contains(join.getDimensions().get(0), RuntimeFilter.class));
+		}
+	}
+
+	/*
+	 * any two relations of a triangle join into T^2/V tuples before the third
+	 * closes the cycle, but the whole triangle has at most T^1.5 tuples, the AGM
+	 * bound with each relation given weight 1/2; a multiway join replaces the
+	 * binary plan of every optimiser
+	 */
+	private static void triangle() throws Exception {
+		Catalogue cat = new Catalogue();
+		String[][] edges = { { "R", "ra", "rb" }, { "S", "sb", "sc" }, { "T", "tc", "ta" } };
+		for (String[] edge : edges) {
+			cat.createRelation(edge[0], 10000);
+			cat.createAttribute(edge[0], edge[1], 100);
+			cat.createAttribute(edge[0], edge[2], 100);
+		}
+		String query = "SELECT ra, sb, tc\nFROM R, S, T\nWHERE rb=sb, sc=tc, ta=ra";
+
+		Operator canonical = parse(cat, query);
+		MultiwayJoin join = find(new Optimiser(cat).optimise(parse(cat, query)), MultiwayJoin.class);
+		check("triangle: multiway join replaces the binary plan", join != null);
+		if (join != null) {
+			List<Relation> inputs = new ArrayList<Relation>();
+			for (Operator input : join.inputs) {
+				inputs.add(input.getOutput());
+			}
+			check("triangle: AGM bound is T^1.5",
+					Math.abs(Estimator.agmBound(inputs, join.getPredicates()) - 1000000) <= 1);
+		}
+		check("triangle: memo plans a multiway join",
+				contains(new MemoOptimiser(cat).optimise(parse(cat, query)), MultiwayJoin.class));
+		check("triangle: randomised optimiser plans a multiway join",
+				contains(new RandomisedOptimiser(cat).optimise(parse(cat, query)), MultiwayJoin.class));
+		check("triangle: multiway plan outputs the attributes of the query",
+				new HashSet<String>(names(new Optimiser(cat).optimise(parse(cat, query))))
+						.equals(new HashSet<String>(names(canonical))));
+	}
+
+	/*
+	 * multi-column statistics correct the estimates that take attributes as
+	 * independent: a model fixes its make, a zip code fixes its state, and a
+	 * customer places orders on few of the dates, so the second predicate of
+	 * each pair filters far less than its own value count suggests
+	 */
+	private static void columnGroups() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Car", 10000);
+		cat.createAttribute("Car", "make", 10);
+		cat.createAttribute("Car", "model", 100);
+		cat.createRelation("Address", 10000);
+		cat.createAttribute("Address", "zip", 1000);
+		cat.createAttribute("Address", "state", 50);
+		cat.createRelation("Orders", 10000);
+		cat.createAttribute("Orders", "ocust", 100);
+		cat.createAttribute("Orders", "odate", 100);
+		cat.createRelation("Lines", 1000);
+		cat.createAttribute("Lines", "lcust", 100);
+		cat.createAttribute("Lines", "ldate", 100);
+
+		String cars = "SELECT make\nFROM Car\nWHERE make=\"m\", model=\"x\"";
+		String addresses = "SELECT zip\nFROM Address\nWHERE zip=\"z\", state=\"s\"";
+		String orders = "SELECT ocust\nFROM Orders, Lines\nWHERE ocust=lcust, odate=ldate";
+		check("column group: without statistics make and model are independent", count(parse(cat, cars)) == 10);
+		check("column group: without statistics zip and state are independent", count(parse(cat, addresses)) == 1);
+		check("column group: without statistics the join keys are independent", count(parse(cat, orders)) == 1000);
+
+		cat.createColumnGroup("Car", Arrays.asList("make", "model"), 100);
+		ColumnGroup zipState = cat.createColumnGroup("Address", Arrays.asList("zip", "state"), -1);
+		cat.addDependency("Address", zipState, "zip", "state", 1.0);
+		cat.createColumnGroup("Orders", Arrays.asList("ocust", "odate"), 200);
+		check("column group: select divides by the joint distinct count", count(parse(cat, cars)) == 100);
+		check("column group: a dependent attribute filters nothing more", count(parse(cat, addresses)) == 10);
+		check("column group: composite join key divides by the joint distinct count",
+				count(parse(cat, orders)) == 10000);
+	}
+
+	/*
+	 * the wide attributes of Orders are only projected, and the join with the
+	 * few gold customers keeps few orders, so they are fetched by row id above
+	 * the join rather than carried through it; a fetched attribute has no more
+	 * values than the fetched tuples
+	 */
+	private static void lateMaterialisation() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Orders", 10000);
+		cat.createAttribute("Orders", "ocust", 1000);
+		cat.createAttribute("Orders", "item", 5000);
+		cat.createAttribute("Orders", "address", 5000);
+		cat.createAttribute("Orders", "note", 5000);
+		cat.createRelation("Customer", 1000);
+		cat.createAttribute("Customer", "custid", 1000);
+		cat.createAttribute("Customer", "tier", 100);
+
+		Operator plan = new LateMaterialiser().plan(new Optimiser(cat).optimise(parse(cat,
+				"SELECT item, address, note\nFROM Orders, Customer\nWHERE ocust=custid, tier=\"gold\"")));
+		Fetch fetch = find(plan, Fetch.class);
+		check("late: wide attributes are fetched above the join",
+				fetch != null && contains(fetch.getInput(), Join.class));
+		if (fetch != null) {
+			check("late: fetches the projected attributes of Orders", new HashSet<Attribute>(fetch.getAttributes())
+					.equals(new HashSet<Attribute>(Arrays.asList(new Attribute("item"), new Attribute("address"),
+							new Attribute("note")))));
+			check("late: join does not carry the fetched attributes",
+					!names(fetch.getInput()).contains("item") && !names(fetch.getInput()).contains("note"));
+			boolean capped = true;
+			for (Attribute a : fetch.getOutput().getAttributes()) {
+				capped &= a.getValueCount() <= fetch.getOutput().getTupleCount();
+			}
+			check("late: fetched value counts are at most the tuples fetched", capped);
+		}
+		check("late: plan outputs the attributes of the query",
+				names(plan).equals(Arrays.asList("item", "address", "note")));
+	}
+
+	/*
+	 * a repeated query is given the cached plan, as a copy that can be changed
+	 * without changing the plan in the cache
+	 */
+	private static void planCache(Catalogue cat) throws Exception {
+		String q5 = "SELECT projname, deptname\nFROM Person, Project, Department\n" +
+				"WHERE persid=manager, dept=deptid, persname=\"Smith\"";
+		PlanCache cache = new PlanCache(4);
+		Operator canonical = parse(cat, q5);
+		check("plan cache: first query misses", cache.get(canonical) == null);
+		Operator optimised = new Optimiser(cat).optimise(canonical);
+		String chosen = optimised.toString();
+		cache.put(canonical, optimised);
+
+		Operator hit = cache.get(parse(cat, q5));
+		check("plan cache: repeated query hits", hit != null && hit.toString().equals(chosen));
+		hit.inputs.set(0, new Scan(cat.getRelation("Person")));
+		check("plan cache: cached plan is not changed through a copy",
+				cache.get(canonical).toString().equals(chosen));
+		check("plan cache: hits and misses are counted", cache.getHits() == 2 && cache.getMisses() == 1);
+	}
+
+	/*
+	 * a cached result is read back in place of the subplan that computed it,
+	 * until a relation it reads changes in the catalogue
+	 */
+	private static void resultCache() throws Exception {
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		PlanCache plans = new PlanCache(4);
+		ResultCache results = new ResultCache(1000);
+		cat.addChangeListener(plans::invalidate);
+		cat.addChangeListener(results::invalidate);
+
+		String q4 = "SELECT projid\nFROM Project, Department\nWHERE dept=deptid, deptname=\"Research\"";
+		Operator canonical = parse(cat, q4);
+		Operator optimised = new Optimiser(cat).optimise(canonical);
+		plans.put(canonical, optimised);
+		check("result cache: result is stored", results.put(optimised));
+		Operator read = results.substitute(new Optimiser(cat).optimise(parse(cat, q4)));
+		check("result cache: repeated query reads the result", read instanceof CachedResult);
+
+		cat.createIndex("Department", "deptname", IndexType.HASH);
+		check("result cache: change to a relation invalidates its results",
+				!contains(results.substitute(new Optimiser(cat).optimise(parse(cat, q4))), CachedResult.class));
+		check("plan cache: change to a relation invalidates its plans", plans.get(parse(cat, q4)) == null);
+		plans.put(parse(cat, q4), new Optimiser(cat).optimise(parse(cat, q4)));
+		cat.addBitmapTuple("Project", "dept", "1", 0);
+		check("plan cache: a bitmap filled in invalidates its plans", plans.get(parse(cat, q4)) == null);
+		plans.put(parse(cat, q4), new Optimiser(cat).optimise(parse(cat, q4)));
+		ColumnGroup group = cat.createColumnGroup("Department", Arrays.asList("deptid", "manager"), -1);
+		plans.put(parse(cat, q4), new Optimiser(cat).optimise(parse(cat, q4)));
+		cat.addDependency("Department", group, "deptid", "manager", 1.0);
+		check("plan cache: a dependency added invalidates its plans", plans.get(parse(cat, q4)) == null);
+
+		// a result is only read back for a subplan with its columns in the same order
+		results.put(new Optimiser(cat).optimise(parse(cat, "SELECT persname, age\nFROM Person\nWHERE age=\"35\"")));
+		Operator reordered = results.substitute(new Optimiser(cat).optimise(
+				parse(cat, "SELECT age, persname\nFROM Person\nWHERE age=\"35\"")));
+		check("result cache: read back result keeps the order of the columns",
+				names(reordered).equals(Arrays.asList("age", "persname")));
+
+		// a runtime filter built from a subplan that is read back is built from the read instead
+		String smith = "FROM Person, Project, Department\nWHERE persid=manager, dept=deptid, persname=\"Smith\"";
+		Operator first = new Optimiser(cat).optimise(parse(cat, "SELECT projname, deptname\n" + smith));
+		results.put(find(first, RuntimeFilter.class).getSource());
+		Operator second = results.substitute(new Optimiser(cat).optimise(parse(cat, "SELECT projname\n" + smith)));
+		check("result cache: a subplan is read back", contains(second, CachedResult.class));
+		check("result cache: runtime filters are built from the plan", filtersInPlan(second, second));
+	}
+
+	/*
+	 * a value missing from the dictionary of an encoded attribute only
+	 * matches nothing once the dictionary holds all of its values
+	 */
+	private static void dictionary() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 1000);
+		cat.createAttribute("R", "c", 3);
+		check("dictionary: attribute is encoded",
+				cat.getRelation("R").getColumnFormat(cat.getAttribute("c")).getEncoding() != ColumnEncoding.PLAIN);
+		Operator select = new Select(new Scan(cat.getRelation("R")), new Predicate(new Attribute("c"), "z"));
+
+		cat.addDictionaryValue("R", "c", "x");
+		cat.addDictionaryValue("R", "c", "y");
+		select.accept(new Estimator());
+		check("dictionary: partial dictionary does not rule a value out", select.getOutput().getTupleCount() > 0);
+
+		cat.addDictionaryValue("R", "c", "w");
+		select.accept(new Estimator());
+		check("dictionary: complete dictionary rules a value out", select.getOutput().getTupleCount() == 0);
+	}
+
+	/*
+	 * a select prunes the zone map of the scan below it through projects and
+	 * runtime filters, and over an index scan as well as a full scan
+	 */
+	private static void zoneMaps() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("R", 400);
+		cat.createAttribute("R", "a", 400);
+		cat.createAttribute("R", "b", 40);
+		cat.createIndex("R", "a", IndexType.HASH);
+		for (int i = 0; i < 4; i++) {
+			int block = cat.addZoneBlock("R", 100);
+			cat.addZoneSynopsis("R", block, "b", String.valueOf(10 * i + 10), String.valueOf(10 * i + 19), 0);
+		}
+		Estimator est = new Estimator();
+		List<Attribute> both = Arrays.asList(new Attribute("a"), new Attribute("b"));
+
+		Operator projected = new Select(new Project(new Scan(cat.getRelation("R")), both),
+				new Predicate(new Attribute("b"), "25"));
+		List<Predicate> chain = new ArrayList<Predicate>();
+		check("zone maps: select prunes through a project", est.zoneMapBase(projected, chain) instanceof Scan);
+		check("zone maps: select predicate is pushed down", chain.size() == 1);
+
+		Operator indexed = new Select(new IndexScan(cat.getRelation("R"), cat.getRelation("R").getIndex(new Attribute("a")),
+				new Predicate(new Attribute("a"), "7")), new Predicate(new Attribute("b"), "25"));
+		chain.clear();
+		check("zone maps: select prunes over an index scan", est.zoneMapBase(indexed, chain) instanceof IndexScan);
+		check("zone maps: index predicate is pushed down", chain.size() == 2);
+
+		Operator missing = new Select(new Project(new Scan(cat.getRelation("R")), both),
+				new Predicate(new Attribute("b"), "99"));
+		missing.accept(est);
+		check("zone maps: no tuple is selected from skipped blocks", missing.getOutput().getTupleCount() == 0);
+	}
+
+	static Operator parse(Catalogue cat, String query) throws Exception {
+		Operator plan = new QueryParser(cat, new StringReader(query)).parse();
+		plan.accept(new Estimator());
+		return plan;
+	}
+
+	static List<String> names(Operator plan) {
+		List<String> names = new ArrayList<String>();
+		for (Attribute a : plan.getOutput().getAttributes()) {
+			names.add(a.getName());
+		}
+		return names;
+	}
+
+	// the tuple count below the root projection
+	static int count(Operator plan) {
+		return (plan instanceof Project ? ((Project) plan).getInput() : plan).getOutput().getTupleCount();
+	}
+
+	static List<JoinMethod> methods(Operator plan) {
+		List<JoinMethod> methods = new ArrayList<JoinMethod>();
+		if (plan instanceof Join) {
+			methods.add(((Join) plan).getMethod());
+		}
+		for (Operator input : plan.inputs) {
+			methods.addAll(methods(input));
+		}
+		return methods;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T extends Operator> T find(Operator plan, Class<T> type) {
+		if (type.isInstance(plan)) {
+			return (T) plan;
+		}
+		for (Operator input : plan.inputs) {
+			T found = find(input, type);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * true if the source of every runtime filter below op is an operator of the plan
+	 */
+	static boolean filtersInPlan(Operator plan, Operator op) {
+		if (op instanceof RuntimeFilter && !reachable(plan, ((RuntimeFilter) op).getSource())) {
+			return false;
+		}
+		for (Operator input : op.inputs) {
+			if (!filtersInPlan(plan, input)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean reachable(Operator plan, Operator op) {
+		if (plan == op) {
+			return true;
+		}
+		for (Operator input : plan.inputs) {
+			if (reachable(input, op)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean contains(Operator plan, Class<? extends Operator> type) {
+		if (type.isInstance(plan)) {
+			return true;
+		}
+		if (plan.inputs != null) {
+			for (Operator input : plan.inputs) {
+				if (contains(input, type)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	static void check(String name, boolean passed) {
+		if (!passed) {
+			failures++;
+			System.out.println("FAILED: " + name);
+		}
+	}
+}
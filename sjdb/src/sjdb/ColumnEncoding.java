@@ -0,0 +1,22 @@
+package sjdb;
+
+/**
+ * The ways in which the values of an attribute may be stored.
+ */
+public enum ColumnEncoding {
+	/**
+	 * Each value is stored in full.
+	 */
+	PLAIN,
+	/**
+	 * Each distinct value is stored once in a dictionary, and each tuple
+	 * stores the code of its value, bit-packed in as few bits as the number
+	 * of distinct values allows.
+	 */
+	DICTIONARY,
+	/**
+	 * Runs of tuples with the same value are stored once, as a dictionary
+	 * code and the length of the run.
+	 */
+	RUN_LENGTH
+}
@@ -0,0 +1,137 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the storage format of an attribute of a named
+ * relation, chosen from the statistics in the catalogue: the encoding
+ * that needs the fewest bits for T(R) tuples with V(R,A) distinct values.
+ *
+ * Under DICTIONARY and RUN_LENGTH encoding, an attr=value predicate is
+ * evaluated on the codes: the value is translated to its code once, with
+ * code(), and each tuple's code is compared with it, so values are only
+ * decoded for output. The values of the dictionary are added as the
+ * catalogue is read; once all V(R,A) of them are there, a value that is
+ * not in the dictionary matches no tuple at all.
+ */
+public class ColumnFormat {
+	/**
+	 * Bits taken by a value stored in full
+	 */
+	public static final int VALUE_BITS = 64;
+	/**
+	 * Bits taken by the length of a run
+	 */
+	public static final int RUN_BITS = 32;
+
+	private ColumnEncoding encoding;
+	private int codeBits;
+	private long bits;
+	private int distinct;
+	private Map<String, Integer> codes;
+	private List<String> values;
+
+	private ColumnFormat(ColumnEncoding encoding, int codeBits, long bits, int distinct) {
+		this.encoding = encoding;
+		this.codeBits = codeBits;
+		this.bits = bits;
+		this.distinct = distinct;
+		this.codes = new HashMap<String, Integer>();
+		this.values = new ArrayList<String>();
+	}
+
+	/**
+	 * Choose the format of an attribute. The tuples are taken to be in no
+	 * particular order, so a column of T tuples with V values has about
+	 * 1 + (T-1)(1-1/V) runs; run-length encoding only pays off when nearly
+	 * all the tuples share a value.
+	 * @param tuples Tuple count of the relation
+	 * @param values Number of distinct values of the attribute
+	 * @return Smallest format for the attribute
+	 */
+	public static ColumnFormat choose(int tuples, int values) {
+		int codeBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(values, 1) - 1));
+		long dictionary = (long) values * VALUE_BITS;
+		long plain = (long) tuples * VALUE_BITS;
+		long coded = (long) tuples * codeBits + dictionary;
+		long runs = tuples == 0 ? 0 : (long) Math.ceil(1 + (tuples - 1) * (1 - 1.0 / Math.max(values, 1)));
+		long runLength = runs * (codeBits + RUN_BITS) + dictionary;
+
+		if (runLength < coded && runLength < plain) {
+			return new ColumnFormat(ColumnEncoding.RUN_LENGTH, codeBits, runLength, values);
+		} else if (coded < plain) {
+			return new ColumnFormat(ColumnEncoding.DICTIONARY, codeBits, coded, values);
+		}
+		return new ColumnFormat(ColumnEncoding.PLAIN, VALUE_BITS, plain, values);
+	}
+
+	/**
+	 * @return the encoding of the attribute
+	 */
+	public ColumnEncoding getEncoding() {
+		return this.encoding;
+	}
+
+	/**
+	 * @return the bits taken by each code (or, for PLAIN, each value)
+	 */
+	public int getCodeBits() {
+		return this.codeBits;
+	}
+
+	/**
+	 * @return the estimated size of the column in bits
+	 */
+	public long getBits() {
+		return this.bits;
+	}
+
+	/**
+	 * Add a value to the dictionary, if it is not there already
+	 * @param value Attribute value
+	 * @return Code of the value
+	 */
+	public int addValue(String value) {
+		Integer code = this.codes.get(value);
+		if (code == null) {
+			code = this.values.size();
+			this.codes.put(value, code);
+			this.values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * @return true if every one of the distinct values of the attribute has
+	 * been added to the dictionary, so that a value not in it matches nothing
+	 */
+	public boolean isComplete() {
+		return this.encoding != ColumnEncoding.PLAIN && this.values.size() >= this.distinct;
+	}
+
+	/**
+	 * Translate a value to its code
+	 * @param value Attribute value
+	 * @return Code of the value, or -1 if it is not in the dictionary
+	 */
+	public int code(String value) {
+		Integer code = this.codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Translate a code back to its value, for output
+	 * @param code Code of a value
+	 * @return Attribute value
+	 */
+	public String decode(int code) {
+		return this.values.get(code);
+	}
+
+	public String toString() {
+		return this.encoding + (this.encoding == ColumnEncoding.PLAIN ? "" : "(" + this.codeBits + " bits)");
+	}
+}
@@ -0,0 +1,75 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents multi-column statistics on a group of attributes
+ * of a named relation, for attributes whose values are not independent:
+ * the number of distinct combinations of their values (the joint distinct
+ * count), and functional-dependency degrees between them. The degree of a
+ * dependency A->B is the fraction of the tuples whose value of B is fixed
+ * by their value of A: 1 if A determines B, 0 if the two are independent.
+ */
+public class ColumnGroup {
+	private List<Attribute> attributes;
+	private int distinct;
+	private Map<String, Double> dependencies;
+
+	/**
+	 * Create a new column group
+	 * @param attributes Attributes of the group
+	 * @param distinct Joint distinct count, or -1 if it is not known
+	 */
+	public ColumnGroup(List<Attribute> attributes, int distinct) {
+		this.attributes = attributes;
+		this.distinct = distinct;
+		this.dependencies = new HashMap<String, Double>();
+	}
+
+	/**
+	 * Record the degree of the dependency from one attribute of the group
+	 * on another; called through Catalogue.addDependency() so that cached
+	 * plans are invalidated
+	 * @param from Determining attribute
+	 * @param to Dependent attribute
+	 * @param degree Degree of the dependency, between 0 and 1
+	 */
+	void addDependency(Attribute from, Attribute to, double degree) {
+		this.dependencies.put(from.getName() + ">" + to.getName(), degree);
+	}
+
+	/**
+	 * @return the attributes of the group
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * @return the joint distinct count, or -1 if it is not known
+	 */
+	public int getDistinct() {
+		return this.distinct;
+	}
+
+	/**
+	 * Return the degree of the dependency from one attribute on another
+	 * @param from Determining attribute
+	 * @param to Dependent attribute
+	 * @return Degree of the dependency, or null if it is not known
+	 */
+	public Double getDependency(Attribute from, Attribute to) {
+		return this.dependencies.get(from.getName() + ">" + to.getName());
+	}
+
+	public String toString() {
+		List<String> names = new ArrayList<String>();
+		for (Attribute a : this.attributes) {
+			names.add(a.getName());
+		}
+		return names + ":" + this.distinct;
+	}
+}
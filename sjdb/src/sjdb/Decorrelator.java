@@ -0,0 +1,162 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Unnests the subqueries of a canonical plan. The QueryParser puts each IN or EXISTS
+ * subquery above the selects of its enclosing query as a semi-join (or anti-join) whose
+ * right input is the canonical plan of the subquery, in which the predicates that refer to
+ * the enclosing query (the correlated predicates) are still selects. Such a plan cannot be
+ * evaluated, or estimated, bottom up: the subquery would have to be run again for every
+ * tuple of the enclosing query.
+ *
+ * The decorrelator pulls each correlated select out of its subquery and makes its
+ * predicate a predicate of the semi-join, and widens the projection of the subquery with
+ * the attributes that the pulled predicates need, so the subquery can be evaluated once
+ * and matched against the enclosing query in a single semi-join.
+ *
+ * A semi-join whose subquery reads a single relation, matched on a key declared in the
+ * catalogue for that relation, keeps a tuple of the
+ * enclosing query exactly when it joins one tuple of the subquery, so it is turned into
+ * a product and selects over the relation, which the join optimisers then order along
+ * with the other joins. The other semi-joins and anti-joins are left on top of the
+ * selects, and placed in the optimised plan by SemiJoinPlanner.
+ *
+ * A subquery may only refer to the attributes of the query immediately enclosing it, and
+ * not from below an aggregate or a limit of its own.
+ */
+public class Decorrelator {
+
+    /**
+     * Decorrelate the subqueries of a canonical plan
+     * @param plan Canonical plan, with correlated subqueries
+     * @return Canonical plan, with semi-joins that refer only to their own inputs
+     */
+    public static Operator unnest(Operator plan) {
+        return unnest(plan, false);
+    }
+
+    private static Operator unnest(Operator plan, boolean projected) {
+        // the semi-joins sit on top of the selects, below the project, aggregate and limit
+        if(plan instanceof UnaryOperator && !(plan instanceof Select)) {
+            boolean narrowed = projected || plan instanceof Project || plan instanceof Aggregate;
+            plan.inputs.set(0, unnest(((UnaryOperator) plan).getInput(), narrowed));
+            return plan;
+        }
+        List<SemiJoin> semiJoins = new ArrayList<>();
+        Operator base = plan;
+        while(base instanceof SemiJoin) {
+            semiJoins.add(0, (SemiJoin) base);
+            base = ((SemiJoin) base).getLeft();
+        }
+        List<SemiJoin> kept = new ArrayList<>();
+        for(SemiJoin semi : semiJoins) {
+            // a subquery's own subqueries are unnested first; its attributes are never output
+            Operator subquery = unnest(semi.getRight(), true);
+            List<Predicate> predicates = new ArrayList<>(semi.getPredicates());
+            subquery = pull(subquery, attributes(subquery), predicates);
+            subquery = widen(subquery, predicates);
+            Operator relation = subquery instanceof Project ? ((Project) subquery).getInput() : subquery;
+            // 子查询只有一个表，并且按它的键匹配时，半连接就是普通的连接
+            if(!semi.isAnti() && projected && isKey(relation, predicates) &&
+                    Collections.disjoint(attributes(relation), attributes(base))) {
+                base = new Product(base, relation);
+                for(Predicate p : predicates) {
+                    base = new Select(base, p);
+                }
+            }else {
+                // its left input is set once the converted semi-joins have been merged into the base
+                kept.add(new SemiJoin(semi.getLeft(), subquery, predicates, semi.isAnti()));
+            }
+        }
+        Operator ret = base;
+        for(SemiJoin semi : kept) {
+            ret = new SemiJoin(ret, semi.getRight(), semi.getPredicates(), semi.isAnti());
+        }
+        return ret;
+    }
+
+    /*
+     * take the selects that refer to attributes outside the subquery out of it, adding their
+     * predicates (with the attribute of the enclosing query on the left) to the given list
+     */
+    private static Operator pull(Operator op, Set<Attribute> inner, List<Predicate> pulled) {
+        if(op instanceof Select) {
+            Predicate p = ((Select) op).getPredicate();
+            if(!p.equalsValue() && !inner.contains(p.getLeftAttribute())) {
+                pulled.add(p);
+                return pull(((Select) op).getInput(), inner, pulled);
+            }
+            if(!p.equalsValue() && !inner.contains(p.getRightAttribute())) {
+                pulled.add(new Predicate(p.getRightAttribute(), p.getLeftAttribute()));
+                return pull(((Select) op).getInput(), inner, pulled);
+            }
+        }
+        if(op instanceof Aggregate || op instanceof Limit || op instanceof TopK) {
+            return op;
+        }
+        // the right input of a semi-join has already been decorrelated on its own
+        int inputs = op instanceof SemiJoin ? 1 : op.inputs.size();
+        for(int i=0;i<inputs;i++) {
+            op.inputs.set(i, pull(op.inputs.get(i), inner, pulled));
+        }
+        return op;
+    }
+
+    /*
+     * the subquery projected on (at least) the attributes of the semi-join predicates
+     */
+    private static Operator widen(Operator subquery, List<Predicate> predicates) {
+        if(predicates.isEmpty()) {
+            return subquery;
+        }
+        List<Attribute> attributes = new ArrayList<>();
+        Operator input = subquery;
+        if(subquery instanceof Project) {
+            attributes.addAll(((Project) subquery).getAttributes());
+            input = ((Project) subquery).getInput();
+        }
+        for(Predicate p : predicates) {
+            if(!attributes.contains(p.getRightAttribute())) {
+                attributes.add(p.getRightAttribute());
+            }
+        }
+        return new Project(input, attributes);
+    }
+
+    /*
+     * true if the plan applies selects to a single relation, and one of the predicates
+     * matches on a key of it
+     */
+    private static boolean isKey(Operator op, List<Predicate> predicates) {
+        while(op instanceof Select) {
+            op = ((Select) op).getInput();
+        }
+        if(!(op instanceof Scan)) {
+            return false;
+        }
+        // V(R,A) == T(R) only says that the values were distinct when the statistics were taken
+        NamedRelation reln = (NamedRelation) ((Scan) op).getRelation();
+        for(Predicate p : predicates) {
+            if(reln.getAttributes().contains(p.getRightAttribute()) && reln.isKey(p.getRightAttribute())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * the attributes of the relations read by the plan, except those only matched by a semi-join
+     */
+    private static Set<Attribute> attributes(Operator op) {
+        Set<Attribute> ret = new HashSet<>();
+        if(op instanceof Scan) {
+            ret.addAll(((Scan) op).getRelation().getAttributes());
+        }
+        int inputs = op instanceof SemiJoin ? 1 : op.inputs.size();
+        for(int i=0;i<inputs;i++) {
+            ret.addAll(attributes(op.inputs.get(i)));
+        }
+        return ret;
+    }
+}
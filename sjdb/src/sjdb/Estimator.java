@@ -2,10 +2,31 @@ package sjdb;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 public class Estimator implements PlanVisitor {
-	private int cost = 0;
+	/*
+	 * fan-out of a B-tree node, used for the height of a B-tree index
+	 */
+	private static final int BTREE_FANOUT = 100;
+	/*
+	 * an index fetches each matching tuple with a random access, which we count
+	 * as this many sequential tuple reads
+	 */
+	public static final int INDEX_FETCH_COST = 4;
+	/*
+	 * fraction of the non-matching tuples that a Bloom filter lets through
+	 */
+	public static final double BLOOM_FALSE_POSITIVES = 0.01;
+	// largest number of inputs for which the fractional edge covers are searched
+	private static final int AGM_SEARCH_LIMIT = 10;
+	// accumulated in a long, so that an infinite (Integer.MAX_VALUE) cost cannot wrap around
+	private long cost = 0;
 	public Estimator() {
 		// empty constructor
 	}
@@ -53,6 +74,139 @@ public class Estimator implements PlanVisitor {
 		op.setOutput(output);
 	}
 
+	/*
+	 * Create output relation on IndexScan operator
+	 * the output is that of select(attr=val) over a scan of the relation:
+	 * T(R)/V(R,A) tuples (or the exact count from a loaded bitmap index), with V(indexScan(R), A) = 1;
+	 * the cost is the index lookup plus a random fetch of every matching tuple
+	 */
+	public void visit(IndexScan op) {
+		Relation input = op.getRelation();
+		Attribute attr = input.getAttribute(op.getPredicate().getLeftAttribute());
+		int count = exactCount(input, op.getPredicate());
+		if(count < 0) {
+			count = (int)Math.ceil((double)input.getTupleCount() / attr.getValueCount());
+		}
+		Relation output = new Relation(count);
+
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while (iter.hasNext()) {
+			Attribute a = iter.next();
+			if(a.equals(attr)) {
+				output.addAttribute(new Attribute(a.getName(), 1));
+			}else {
+				output.addAttribute(new Attribute(a));
+			}
+		}
+		cost += lookupCost(op.getIndex(), input) + (long)count * INDEX_FETCH_COST;
+		op.setOutput(output);
+	}
+
+	/*
+	 * Create output relation on BitmapScan operator
+	 * the bitmaps of all the predicates are intersected before any tuple is fetched;
+	 * if every bitmap is loaded the output tuple count is exact, the cardinality of the
+	 * intersection; otherwise each predicate without a loaded bitmap keeps 1/V(R,A) of
+	 * the tuples left by the others; V(bitmapScan(R), A) = 1 for each predicate's attribute
+	 *
+	 * the cost is one lookup per value, one unit per 64-bit word of bitmap combined
+	 * (T(R)/64 words for a bitmap that is not loaded), plus a random fetch of every matching tuple
+	 */
+	public void visit(BitmapScan op) {
+		Relation input = op.getRelation();
+		int tuples = input.getTupleCount();
+		List<Bitmap> loaded = new ArrayList<Bitmap>();
+		double fraction = 1;
+		long words = 0;
+		for(Predicate p : op.getPredicates()) {
+			Bitmap bitmap = op.getIndex(p).getBitmap(p.getRightValue());
+			if(bitmap == null) {
+				fraction /= input.getAttribute(p.getLeftAttribute()).getValueCount();
+				words += (tuples + 63) / 64;
+			}else {
+				loaded.add(bitmap);
+				words += bitmap.words();
+			}
+		}
+		// the last intersection is only counted, not built
+		int matches = tuples;
+		if(loaded.size() == 1) {
+			matches = loaded.get(0).cardinality();
+		}else if(loaded.size() > 1) {
+			Bitmap and = loaded.get(0);
+			for(int i=1;i<loaded.size()-1;i++) {
+				and = and.and(loaded.get(i));
+			}
+			matches = and.andCardinality(loaded.get(loaded.size()-1));
+		}
+		int count = (int)Math.ceil(matches * fraction);
+		if(loaded.isEmpty() && correlatedCount(op) >= 0) {
+			count = correlatedCount(op);
+		}
+		Relation output = new Relation(count);
+
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while (iter.hasNext()) {
+			Attribute a = iter.next();
+			boolean selected = false;
+			for(Predicate p : op.getPredicates()) {
+				selected = selected || a.equals(p.getLeftAttribute());
+			}
+			output.addAttribute(selected ? new Attribute(a.getName(), 1) : new Attribute(a));
+		}
+		cost += op.getPredicates().size() + words + (long)count * INDEX_FETCH_COST;
+		op.setOutput(output);
+	}
+
+	/*
+	 * the exact number of tuples of a named relation that satisfy attr=val, from a loaded
+	 * bitmap index on the attribute, or 0 if the value is not in the complete dictionary of
+	 * an encoded attribute; -1 if neither is known
+	 */
+	public int exactCount(Relation reln, Predicate predicate) {
+		if(!(reln instanceof NamedRelation) || !predicate.equalsValue()) {
+			return -1;
+		}
+		ColumnFormat format = ((NamedRelation) reln).getColumnFormat(predicate.getLeftAttribute());
+		if(format.isComplete() && format.code(predicate.getRightValue()) < 0) {
+			return 0;
+		}
+		Index index = ((NamedRelation) reln).getIndex(predicate.getLeftAttribute());
+		if(!(index instanceof BitmapIndex) || !((BitmapIndex) index).isLoaded()) {
+			return -1;
+		}
+		return ((BitmapIndex) index).getBitmap(predicate.getRightValue()).cardinality();
+	}
+
+	/*
+	 * cost of finding the tuples with one value in an index and fetching them:
+	 * the lookup plus a random fetch of each of the T(R)/V(R,A) matching tuples
+	 */
+	public int probeCost(Index index, Relation reln) {
+		Attribute attr = reln.getAttribute(index.getAttribute());
+		long matches = (long)Math.ceil((double)reln.getTupleCount() / attr.getValueCount());
+		return (int)Math.min(lookupCost(index, reln) + matches * INDEX_FETCH_COST, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * cost of finding the tuples with one value in an index
+	 * hash: a single probe
+	 * bitmap: a single probe for the bitmap of the value
+	 * btree: one node per level, ceil(log_fanout(T(R)))
+	 */
+	public int lookupCost(Index index, Relation reln) {
+		if(index.getType() == IndexType.HASH || index.getType() == IndexType.BITMAP) {
+			return 1;
+		}
+		int height = 1;
+		long capacity = BTREE_FANOUT;
+		while(capacity < reln.getTupleCount()) {
+			capacity *= BTREE_FANOUT;
+			height++;
+		}
+		return height;
+	}
+
 	/*
 	 * selector the specific attributes from the input-operator's output
 	 */
@@ -77,6 +231,14 @@ public class Estimator implements PlanVisitor {
 	 * unary
 	 * case 1: attr=val
 	 * T(select(R)) = T(R)/V(R,A), V(select(R), A) = 1
+	 * directly over a scan, a loaded bitmap index on A gives T(select(R)) exactly
+	 *
+	 * a chain of selects (through projects and runtime filters) over a scan is pushed down
+	 * to the scan: if the relation has a zone map, the blocks that cannot satisfy the
+	 * attr=val predicates of the chain are skipped, so their tuples are taken off the cost
+	 * of the scan, and no more tuples can be selected than are in the blocks that are read;
+	 * over an index or bitmap scan, which only fetches matching tuples anyway, the blocks
+	 * only bound the tuples selected
 	 *
 	 * case 2: attr=attr
 	 * T(select(R)) = T(R)/Max(V(R,A), V(R,B)),
@@ -95,11 +257,20 @@ public class Estimator implements PlanVisitor {
 
 		if(predicate.equalsValue()) {
 			// case 1
-			if((inputRelationNum % leftAttr.getValueCount())==0) {
+			int exact = op.getInput() instanceof Scan ?
+					exactCount(((Scan) op.getInput()).getRelation(), predicate) : -1;
+			if(exact >= 0) {
+				selectCount = exact;
+			}else if((inputRelationNum % leftAttr.getValueCount())==0) {
 				selectCount = inputRelationNum / leftAttr.getValueCount();
 			}else {
 				selectCount = (inputRelationNum / leftAttr.getValueCount())+1;
 			}
+			// several attr=value predicates on attributes whose values are correlated
+			int correlated = correlatedCount(op);
+			if(correlated >= 0) {
+				selectCount = correlated;
+			}
 			value = 1;
 		}else {
 			// case 2
@@ -107,6 +278,11 @@ public class Estimator implements PlanVisitor {
 			int leftCount = leftAttr.getValueCount();
 			int rightCount = rightAttr.getValueCount();
 			int count = Math.max(leftCount, rightCount);
+			// the second half of a composite join key
+			int composite = compositeKeyDivisor(op.getInput(), predicate);
+			if(composite > 0) {
+				count = composite;
+			}
 			if((inputRelationNum % count)==0) {
 				selectCount = inputRelationNum / count;
 			}else {
@@ -115,6 +291,20 @@ public class Estimator implements PlanVisitor {
 			value = Math.min(leftCount, rightCount);
 		}
 
+		// zone map pruning of the scan below a chain of selects
+		List<Predicate> chain = new ArrayList<Predicate>();
+		Operator base = zoneMapBase(op, chain);
+		if(base != null) {
+			ZoneMap zoneMap = scannedRelation(base).getZoneMap();
+			int surviving = zoneMap.survivingTuples(chain);
+			if(base instanceof Scan) {
+				// the selects below this one have already taken off the blocks they skip
+				int before = zoneMap.survivingTuples(chain.subList(1, chain.size()));
+				cost -= before - surviving;
+			}
+			selectCount = Math.min(selectCount, surviving);
+		}
+
 		output = new Relation(selectCount);
 		Iterator<Attribute> iter = inputAttr.iterator();
 		while(iter.hasNext()) {
@@ -129,6 +319,461 @@ public class Estimator implements PlanVisitor {
 		op.setOutput(output);
 	}
 
+	/*
+	 * T(select(R)) for all the attr=value predicates on R of a chain of selects (and of the
+	 * index or bitmap scan below it), using the multi-column statistics of R instead of
+	 * taking the attributes as independent:
+	 * a column group whose attributes all have a predicate divides T(R) by its joint
+	 * distinct count, once for the whole group;
+	 * an attribute B whose value depends on an attribute A with a predicate, with degree f,
+	 * keeps f + (1-f)/V(R,B) of the tuples rather than 1/V(R,B) (once A=a holds, B=b holds
+	 * for the fraction f of the tuples where A fixes B, and by chance for the others);
+	 * any other attribute B keeps 1/V(R,B) of the tuples
+	 * returns -1 if no multi-column statistics apply, so that the single-column estimate stands
+	 */
+	private int correlatedCount(Operator op) {
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		while(op instanceof Select) {
+			predicates.add(((Select) op).getPredicate());
+			op = ((Select) op).getInput();
+		}
+		Relation base;
+		if(op instanceof Scan) {
+			base = ((Scan) op).getRelation();
+		}else if(op instanceof IndexScan) {
+			base = ((IndexScan) op).getRelation();
+			predicates.add(((IndexScan) op).getPredicate());
+		}else if(op instanceof BitmapScan) {
+			base = ((BitmapScan) op).getRelation();
+			predicates.addAll(((BitmapScan) op).getPredicates());
+		}else {
+			return -1;
+		}
+		if(!(base instanceof NamedRelation) || ((NamedRelation) base).getColumnGroups().isEmpty()) {
+			return -1;
+		}
+		NamedRelation reln = (NamedRelation) base;
+		// 按谓词出现的顺序（从下往上）处理属性
+		List<Attribute> attrs = new ArrayList<Attribute>();
+		for(int i=predicates.size()-1;i>=0;i--) {
+			Predicate p = predicates.get(i);
+			if(p.equalsValue() && !attrs.contains(p.getLeftAttribute())) {
+				attrs.add(p.getLeftAttribute());
+			}
+		}
+		if(attrs.size() < 2) {
+			return -1;
+		}
+		double count = reln.getTupleCount();
+		boolean applied = false;
+		List<Attribute> done = new ArrayList<Attribute>();
+		for(ColumnGroup group : reln.getColumnGroups()) {
+			if(group.getDistinct() > 0 && attrs.containsAll(group.getAttributes()) &&
+					Collections.disjoint(done, group.getAttributes())) {
+				count /= group.getDistinct();
+				done.addAll(group.getAttributes());
+				applied = true;
+			}
+		}
+		List<Attribute> remaining = new ArrayList<Attribute>(attrs);
+		remaining.removeAll(done);
+		while(!remaining.isEmpty()) {
+			Attribute a = nextAttribute(reln, remaining, done);
+			double values = reln.getAttribute(a).getValueCount();
+			double kept = 1 / values;
+			for(Attribute from : done) {
+				Double degree = reln.getDependency(from, a);
+				if(degree != null) {
+					kept = Math.max(kept, degree + (1 - degree) / values);
+					applied = true;
+				}
+			}
+			count *= kept;
+			done.add(a);
+			remaining.remove(a);
+		}
+		return applied ? (int)Math.ceil(count) : -1;
+	}
+
+	/*
+	 * the attribute to take next: the one most strongly determined by those already taken,
+	 * or else one that determines another of the remaining ones, so that each dependency is
+	 * used in one direction only
+	 */
+	private static Attribute nextAttribute(NamedRelation reln, List<Attribute> remaining, List<Attribute> done) {
+		Attribute next = null;
+		double strongest = -1;
+		for(Attribute a : remaining) {
+			for(Attribute from : done) {
+				Double degree = reln.getDependency(from, a);
+				if(degree != null && degree > strongest) {
+					strongest = degree;
+					next = a;
+				}
+			}
+		}
+		if(next != null) {
+			return next;
+		}
+		for(Attribute a : remaining) {
+			for(Attribute to : remaining) {
+				if(a != to && reln.getDependency(a, to) != null) {
+					return a;
+				}
+			}
+		}
+		return remaining.get(0);
+	}
+
+	/*
+	 * for a join predicate A=B applied above an earlier join predicate A'=B' between the same two
+	 * relations R and S, with multi-column statistics on (A,A') of R or on (B,B') of S: the two
+	 * predicates are a composite key, and together keep T(R)T(S)/max(V(R,AA'), V(S,BB')) tuples
+	 * rather than T(R)T(S)/(max(V(R,A),V(S,B)) * max(V(R,A'),V(S,B'))), where a joint distinct
+	 * count that is not known is taken as the product of the single ones, at most T
+	 * returns the divisor for A=B, given that A'=B' has already divided by max(V(R,A'),V(S,B')),
+	 * or -1 if no multi-column statistics apply
+	 */
+	private int compositeKeyDivisor(Operator input, Predicate predicate) {
+		NamedRelation r = relationOf(input, predicate.getLeftAttribute());
+		NamedRelation s = relationOf(input, predicate.getRightAttribute());
+		if(r == null || s == null || r == s) {
+			return -1;
+		}
+		List<Predicate> earlier = new ArrayList<Predicate>();
+		joinPredicates(input, earlier);
+		for(Predicate q : earlier) {
+			Attribute a = q.getLeftAttribute();
+			Attribute b = q.getRightAttribute();
+			if(r.getAttributes().contains(b) && s.getAttributes().contains(a)) {
+				a = q.getRightAttribute();
+				b = q.getLeftAttribute();
+			}
+			if(a.equals(predicate.getLeftAttribute()) || !r.getAttributes().contains(a) || !s.getAttributes().contains(b)) {
+				continue;
+			}
+			long jointR = jointDistinct(r, predicate.getLeftAttribute(), a);
+			long jointS = jointDistinct(s, predicate.getRightAttribute(), b);
+			if(jointR < 0 && jointS < 0) {
+				continue;
+			}
+			if(jointR < 0) {
+				jointR = Math.min((long) r.getAttribute(predicate.getLeftAttribute()).getValueCount() *
+						r.getAttribute(a).getValueCount(), r.getTupleCount());
+			}
+			if(jointS < 0) {
+				jointS = Math.min((long) s.getAttribute(predicate.getRightAttribute()).getValueCount() *
+						s.getAttribute(b).getValueCount(), s.getTupleCount());
+			}
+			double applied = Math.max(r.getAttribute(a).getValueCount(), s.getAttribute(b).getValueCount());
+			return (int)Math.max(1, Math.ceil(Math.max(jointR, jointS) / applied));
+		}
+		return -1;
+	}
+
+	private static long jointDistinct(NamedRelation reln, Attribute a, Attribute b) {
+		List<Attribute> group = new ArrayList<Attribute>();
+		group.add(a);
+		group.add(b);
+		return reln.getJointDistinct(group);
+	}
+
+	/**
+	 * Return the named relation read by a scan, index scan or bitmap scan
+	 * @param op Operator
+	 * @return the relation read, or null if the operator is no scan
+	 */
+	public static NamedRelation scannedRelation(Operator op) {
+		Relation reln = null;
+		if(op instanceof Scan) {
+			reln = ((Scan) op).getRelation();
+		}else if(op instanceof IndexScan) {
+			reln = ((IndexScan) op).getRelation();
+		}else if(op instanceof BitmapScan) {
+			reln = ((BitmapScan) op).getRelation();
+		}
+		return reln instanceof NamedRelation ? (NamedRelation) reln : null;
+	}
+
+	/**
+	 * Find the scan at the bottom of a chain of selects, projects and runtime
+	 * filters, whose relation's zone map the chain prunes. The predicates of
+	 * the selects, from the top down, and then those of an index or bitmap
+	 * scan, are added to the chain.
+	 * @param op Top of the chain
+	 * @param chain Predicates pushed down to the scan
+	 * @return the scan, index scan or bitmap scan, or null if there is none
+	 * or its relation has no zone map
+	 */
+	public Operator zoneMapBase(Operator op, List<Predicate> chain) {
+		while(op instanceof Select || op instanceof Project || op instanceof RuntimeFilter) {
+			if(op instanceof Select) {
+				chain.add(((Select) op).getPredicate());
+			}
+			op = ((UnaryOperator) op).getInput();
+		}
+		if(op instanceof IndexScan) {
+			chain.add(((IndexScan) op).getPredicate());
+		}else if(op instanceof BitmapScan) {
+			chain.addAll(((BitmapScan) op).getPredicates());
+		}
+		NamedRelation reln = scannedRelation(op);
+		return reln != null && reln.getZoneMap() != null ? op : null;
+	}
+
+	/*
+	 * the named relation read by the plan that has the attribute, or null
+	 */
+	private static NamedRelation relationOf(Operator op, Attribute attr) {
+		NamedRelation reln = scannedRelation(op);
+		if(reln != null && reln.getAttributes().contains(attr)) {
+			return reln;
+		}
+		for(Operator input : op.inputs) {
+			NamedRelation found = relationOf(input, attr);
+			if(found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * the attr=attr predicates applied by the plan
+	 */
+	private static void joinPredicates(Operator op, List<Predicate> predicates) {
+		if(op instanceof Join) {
+			predicates.add(((Join) op).getPredicate());
+		}else if(op instanceof Select && !((Select) op).getPredicate().equalsValue()) {
+			predicates.add(((Select) op).getPredicate());
+		}
+		for(Operator input : op.inputs) {
+			joinPredicates(input, predicates);
+		}
+	}
+
+	/*
+	 * unary, like select(A=B) with B on the build side S of a join:
+	 * of the V(R,A) values, only V(S,B) can match, so
+	 * T(filter(R)) = T(R) * min(1, V(S,B)/V(R,A)), V(filter(R), A) = min(V(R,A), V(S,B));
+	 * a Bloom filter also lets through BLOOM_FALSE_POSITIVES of the tuples that cannot match
+	 */
+	public void visit(RuntimeFilter op) {
+		Relation input = op.getInput().getOutput();
+		Attribute probeAttr = input.getAttribute(op.getProbeAttribute());
+		int buildValues = op.getSource().getOutput().getAttribute(op.getBuildAttribute()).getValueCount();
+		double pass = Math.min(1, (double)buildValues / probeAttr.getValueCount());
+		if(op.getType() == FilterType.BLOOM) {
+			pass = pass + BLOOM_FALSE_POSITIVES * (1 - pass);
+		}
+		Relation output = new Relation((int)Math.ceil(input.getTupleCount() * pass));
+
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while(iter.hasNext()) {
+			Attribute a = iter.next();
+			if(a.equals(probeAttr)) {
+				output.addAttribute(new Attribute(a.getName(), (int)Math.ceil(a.getValueCount() * pass)));
+			}else {
+				output.addAttribute(new Attribute(a));
+			}
+		}
+		cost += output.getTupleCount();
+		op.setOutput(output);
+	}
+
+	/*
+	 * unary, the output is the input: T(exchange(R)) = T(R), V unchanged
+	 * the cost is the tuples moved between workers: T(R) for gather and repartition,
+	 * T(R) times the degree of parallelism for broadcast
+	 */
+	public void visit(Exchange op) {
+		Relation input = op.getInput().getOutput();
+		Relation output = new Relation(input.getTupleCount());
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while(iter.hasNext()) {
+			output.addAttribute(new Attribute(iter.next()));
+		}
+		long moved = input.getTupleCount();
+		if(op.getType() == ExchangeType.BROADCAST) {
+			moved = moved * op.getDegree();
+		}
+		cost += moved;
+		op.setOutput(output);
+	}
+
+	/*
+	 * unary, T(fetch(R)) = T(R); the fetched attributes keep their value counts in the
+	 * named relation, up to T(R) (Relation.addAttribute() caps them)
+	 * the cost is a random fetch of every tuple, by its row id
+	 */
+	public void visit(Fetch op) {
+		Relation input = op.getInput().getOutput();
+		Relation output = new Relation(input.getTupleCount());
+		Iterator<Attribute> iter = input.getAttributes().iterator();
+		while(iter.hasNext()) {
+			output.addAttribute(new Attribute(iter.next()));
+		}
+		for(Attribute a : op.getAttributes()) {
+			output.addAttribute(new Attribute(op.getRelation().getAttribute(a)));
+		}
+		cost += (long)output.getTupleCount() * INDEX_FETCH_COST;
+		op.setOutput(output);
+	}
+
+	/*
+	 * unary, one output tuple per group:
+	 * T(aggregate(R)) = min(V(R,A1) * ... * V(R,An), T(R)) for group-by attributes A1..An,
+	 * and 1 without group-by attributes (0 if R is empty)
+	 * the group-by attributes keep their value counts (up to the number of groups);
+	 * MIN(B) and MAX(B) take at most V(R,B) values, COUNT and SUM one per group
+	 */
+	public void visit(Aggregate op) {
+		Relation input = op.getInput().getOutput();
+		long groups = 1;
+		for(Attribute a : op.getGroupBy()) {
+			groups = Math.min(groups * input.getAttribute(a).getValueCount(), Integer.MAX_VALUE);
+		}
+		groups = Math.min(groups, input.getTupleCount());
+		Relation output = new Relation((int)groups);
+
+		for(Attribute a : op.getGroupBy()) {
+			Attribute attr = input.getAttribute(a);
+			output.addAttribute(new Attribute(attr.getName(), Math.min(attr.getValueCount(), (int)groups)));
+		}
+		for(AggregateCall call : op.getCalls()) {
+			int values = (int)groups;
+			if(call.getFunction() == AggregateFunction.MIN || call.getFunction() == AggregateFunction.MAX) {
+				values = Math.min(values, input.getAttribute(call.getAttribute()).getValueCount());
+			}
+			output.addAttribute(new Attribute(call.getName(), values));
+		}
+		cost += output.getTupleCount();
+		op.setOutput(output);
+	}
+
+	/*
+	 * a cached result is read as it was stored: its cost is T(R)
+	 */
+	public void visit(CachedResult op) {
+		Relation output = new Relation(op.getResult().getTupleCount());
+		for(Attribute attr : op.getResult().getAttributes()) {
+			output.addAttribute(new Attribute(attr));
+		}
+		cost += output.getTupleCount();
+		op.setOutput(output);
+	}
+
+	/*
+	 * unary
+	 * T(limit(R, k)) = min(k, T(R))
+	 * the plan is costed under a row goal: the pipeline below the limit stops once it
+	 * has produced the k tuples, so its cost is scaled by k/T(R); the blocking parts of
+	 * the plan (hash tables, sorts, aggregates) are still paid in full
+	 */
+	public void visit(Limit op) {
+		Relation input = op.getInput().getOutput();
+		Relation output = limit(input, op.getCount());
+		cost -= rowGoalSaving(op.getInput(), output.getTupleCount());
+		cost += output.getTupleCount();
+		op.setOutput(output);
+	}
+
+	/*
+	 * unary
+	 * T(topk(R, k)) = min(k, T(R))
+	 * each input tuple is offered to a heap of at most k tuples, T(R)*log2(min(k,T(R)))
+	 * (the cost of sorting when there is no k); an input already in ascending order on
+	 * the attribute is costed as a limit instead
+	 */
+	public void visit(TopK op) {
+		Relation input = op.getInput().getOutput();
+		Relation output = limit(input, op.getCount());
+		if(!op.isDescending() && isSortedOn(op.getInput(), op.getAttribute())) {
+			cost -= rowGoalSaving(op.getInput(), output.getTupleCount());
+		}else if(output.getTupleCount() > 1) {
+			cost += (long)Math.ceil(input.getTupleCount() * (Math.log(output.getTupleCount()) / Math.log(2)));
+		}
+		cost += output.getTupleCount();
+		op.setOutput(output);
+	}
+
+	/*
+	 * the first k tuples of a relation
+	 */
+	private static Relation limit(Relation input, int k) {
+		Relation output = new Relation(Math.min(k, input.getTupleCount()));
+		for(Attribute attr : input.getAttributes()) {
+			output.addAttribute(new Attribute(attr.getName(), Math.min(attr.getValueCount(), output.getTupleCount())));
+		}
+		return output;
+	}
+
+	/*
+	 * the cost saved when only the first k tuples of a plan's output are produced:
+	 * the part of its cost that is streamed to its output, scaled by 1 - k/T
+	 */
+	private long rowGoalSaving(Operator op, int k) {
+		int count = op.getOutput().getTupleCount();
+		if(count <= k) {
+			return 0;
+		}
+		return (long)((1 - (double)k / count) * streamedCost(op));
+	}
+
+	/*
+	 * the part of the cost of a plan that is spent in the pipeline producing its output,
+	 * which stops early under a row goal; the inputs that are built into a hash table,
+	 * sorted, aggregated or materialised before the first output tuple are not part of it
+	 * hash join: the probe of its right input; nested loop join or product: its left input;
+	 * index nested loop join: its left input and the index probes; merge join: both inputs
+	 * if they are already in order, otherwise only the merge; multiway join: only the join;
+	 * star join: the probes of its fact input; semi-join: the probes of its left input
+	 */
+	public long streamedCost(Operator op) {
+		Estimator e = new Estimator();
+		long own = e.estimate(op);
+		for(Operator input : op.inputs) {
+			own -= e.estimate(input);
+		}
+		if(op instanceof Aggregate || op instanceof Limit || op instanceof TopK || op instanceof MultiwayJoin) {
+			return op.getOutput().getTupleCount();
+		}
+		if(op instanceof Product) {
+			return own + streamedCost(((Product) op).getLeft());
+		}
+		if(op instanceof Join) {
+			Join join = (Join) op;
+			JoinMethod method = join.getMethod();
+			if(method == JoinMethod.INDEX_NESTED_LOOP) {
+				return own + e.estimate(join.getRight()) + streamedCost(join.getLeft());
+			}else if(method == JoinMethod.NESTED_LOOP) {
+				return own + streamedCost(join.getLeft());
+			}else if(method == JoinMethod.MERGE) {
+				Predicate p = join.getPredicate();
+				if(isSortedOn(join.getLeft(), p.getLeftAttribute()) && isSortedOn(join.getRight(), p.getRightAttribute())) {
+					return own + streamedCost(join.getLeft()) + streamedCost(join.getRight());
+				}
+				return op.getOutput().getTupleCount();
+			}else if(method == JoinMethod.HASH) {
+				own -= join.getLeft().getOutput().getTupleCount();
+			}
+			return own + streamedCost(join.getRight());
+		}
+		if(op instanceof SemiJoin) {
+			return own - ((SemiJoin) op).getRight().getOutput().getTupleCount() + streamedCost(((SemiJoin) op).getLeft());
+		}
+		if(op instanceof StarJoin) {
+			for(Operator dimension : ((StarJoin) op).getDimensions()) {
+				own -= dimension.getOutput().getTupleCount();
+			}
+			return own + streamedCost(((StarJoin) op).getFact());
+		}
+		if(op instanceof UnaryOperator) {
+			return own + streamedCost(((UnaryOperator) op).getInput());
+		}
+		return own;
+	}
+
 	/*
 	 * binary
 	 * T(RxS) = T(R)T(S)
@@ -136,7 +781,7 @@ public class Estimator implements PlanVisitor {
 	public void visit(Product op) {
 		Relation leftInput = op.getLeft().output;
 		Relation rightInput = op.getRight().output;
-		Relation output = new Relation(leftInput.getTupleCount()* rightInput.getTupleCount());
+		Relation output = new Relation(saturate((long)leftInput.getTupleCount() * rightInput.getTupleCount()));
 
 		Iterator<Attribute> leftIter = leftInput.getAttributes().iterator();
 		Iterator<Attribute> rightIter = rightInput.getAttributes().iterator();
@@ -212,7 +857,7 @@ public class Estimator implements PlanVisitor {
 
 		//calculate the tuple count and generate the output based on that
 		max_count = Math.max(LeftAttr.getValueCount(), RightAttr.getValueCount());
-		Relation output = new Relation((LeftInput.getTupleCount() * RightInput.getTupleCount())/max_count);
+		Relation output = new Relation(saturate((long)LeftInput.getTupleCount() * RightInput.getTupleCount() / max_count));
 
 		//attributes with initial relations
 		//with some changes to the value counts
@@ -237,6 +882,343 @@ public class Estimator implements PlanVisitor {
 		op.setOutput(output);
 		//count the query cost for selection
 		cost = cost + output.getTupleCount();
+		//physical joins also pay for reading (and possibly sorting) their inputs
+		cost = cost + joinCost(op);
+	}
+
+	/*
+	 * n-ary, all inputs joined at once on the join predicates:
+	 * T(multiway join) = min(T(R1)...T(Rn) / (max(V(R,A), V(S,B)) for each predicate A=B), AGM bound)
+	 * the join attributes that are equal take the smallest value count among them
+	 * the cost is reading each input and sorting it into a trie, plus the work of the
+	 * worst-case optimal join, which is bounded by the AGM bound on its output
+	 */
+	public void visit(MultiwayJoin op) {
+		List<Relation> inputs = new ArrayList<Relation>();
+		double count = 1;
+		long inputCost = 0;
+		for(Operator input : op.getInputs()) {
+			Relation reln = input.getOutput();
+			inputs.add(reln);
+			count *= reln.getTupleCount();
+			inputCost += reln.getTupleCount() + sortCost(reln);
+		}
+		Map<String, String> classes = attributeClasses(op.getPredicates());
+		Map<String, Integer> classValues = new HashMap<String, Integer>();
+		for(Predicate p : op.getPredicates()) {
+			int left = valueCount(inputs, p.getLeftAttribute());
+			int right = valueCount(inputs, p.getRightAttribute());
+			count /= Math.max(1, Math.max(left, right));
+			String c = find(classes, p.getLeftAttribute().getName());
+			Integer values = classValues.get(c);
+			classValues.put(c, Math.min(values == null ? Integer.MAX_VALUE : values, Math.min(left, right)));
+		}
+		long agm = agmBound(inputs, op.getPredicates());
+		Relation output = new Relation(saturate((long)Math.min(Math.ceil(count), agm)));
+		for(Relation reln : inputs) {
+			for(Attribute attr : reln.getAttributes()) {
+				int values = attr.getValueCount();
+				if(classes.containsKey(attr.getName())) {
+					values = classValues.get(find(classes, attr.getName()));
+				}
+				output.addAttribute(new Attribute(attr.getName(), Math.min(values, Math.max(1, output.getTupleCount()))));
+			}
+		}
+		op.setOutput(output);
+		cost += output.getTupleCount() + inputCost + agm;
+	}
+
+	/*
+	 * semi-join of L and R on L.A = R.B (anti-join: the tuples of L that it drops)
+	 * T(L semi-join R) = T(L) * min(1, V(R,B)/V(L,A)), over all its predicates
+	 * T(L anti-join R) = T(L) - T(L semi-join R)
+	 * V(L semi-join R, A) = min(V(L,A), V(R,B)), other value counts are capped by T
+	 * with no predicates, a semi-join keeps all of L if R is not empty
+	 * the cost is building a hash table on R and probing it with each tuple of L
+	 */
+	public void visit(SemiJoin op) {
+		Relation left = op.getLeft().getOutput();
+		Relation right = op.getRight().getOutput();
+		double matched = right.getTupleCount() > 0 ? 1 : 0;
+		Map<String, Integer> joinValues = new HashMap<String, Integer>();
+		for(Predicate p : op.getPredicates()) {
+			int leftValues = left.getAttribute(p.getLeftAttribute()).getValueCount();
+			int rightValues = right.getAttribute(p.getRightAttribute()).getValueCount();
+			matched *= Math.min(1.0, (double) rightValues / Math.max(1, leftValues));
+			joinValues.put(p.getLeftAttribute().getName(), Math.min(leftValues, rightValues));
+		}
+		double fraction = op.isAnti() ? 1 - matched : matched;
+		Relation output = new Relation((int)Math.ceil(left.getTupleCount() * fraction));
+		for(Attribute attr : left.getAttributes()) {
+			int values = attr.getValueCount();
+			if(!op.isAnti() && joinValues.containsKey(attr.getName())) {
+				values = joinValues.get(attr.getName());
+			}
+			output.addAttribute(new Attribute(attr.getName(), Math.min(values, Math.max(1, output.getTupleCount()))));
+		}
+		op.setOutput(output);
+		cost += output.getTupleCount() + left.getTupleCount() + right.getTupleCount();
+	}
+
+	/*
+	 * a fact input R joined with dimensions D1..Dn, each on R.Ai = Di.Bi
+	 * T(star join) = T(R) * T(D1)/max(V(R,A1), V(D1,B1)) * ... * T(Dn)/max(V(R,An), V(Dn,Bn))
+	 * with value counts as for a chain of joins
+	 * the cost is building a hash table on each dimension, and probing dimension i with the
+	 * fact tuples that matched dimensions 1..i-1, on top of the output
+	 */
+	public void visit(StarJoin op) {
+		Relation fact = op.getFact().getOutput();
+		double rows = fact.getTupleCount();
+		long probes = 0;
+		long builds = 0;
+		Map<String, Integer> joinValues = new HashMap<String, Integer>();
+		for(int i=0;i<op.getDimensions().size();i++) {
+			Relation dimension = op.getDimensions().get(i).getOutput();
+			Predicate p = op.getPredicates().get(i);
+			int factValues = fact.getAttribute(p.getLeftAttribute()).getValueCount();
+			int dimensionValues = dimension.getAttribute(p.getRightAttribute()).getValueCount();
+			probes += (long)Math.ceil(rows);
+			builds += dimension.getTupleCount();
+			rows = rows * dimension.getTupleCount() / Math.max(1, Math.max(factValues, dimensionValues));
+			joinValues.put(p.getLeftAttribute().getName(), Math.min(factValues, dimensionValues));
+			joinValues.put(p.getRightAttribute().getName(), Math.min(factValues, dimensionValues));
+		}
+		Relation output = new Relation(saturate((long)Math.ceil(rows)));
+		for(Operator input : op.getInputs()) {
+			for(Attribute attr : input.getOutput().getAttributes()) {
+				Integer values = joinValues.get(attr.getName());
+				output.addAttribute(values == null ? new Attribute(attr) : new Attribute(attr.getName(), values));
+			}
+		}
+		op.setOutput(output);
+		cost += output.getTupleCount() + builds + probes;
+	}
+
+	/*
+	 * the AGM bound on the size of a join: the smallest product T(R1)^x1...T(Rn)^xn over the
+	 * fractional edge covers x of the join attributes, where each class of equal join
+	 * attributes must be covered at least once by the inputs that have it
+	 * the covers are searched with each xi in {0, 1/2, 1}, which finds the optimum when
+	 * every input has at most two classes of join attributes (a graph, as in a cycle of
+	 * binary relations), and otherwise still gives an upper bound on the size
+	 */
+	public static long agmBound(List<Relation> inputs, List<Predicate> predicates) {
+		Map<String, String> classes = attributeClasses(predicates);
+		int n = inputs.size();
+		List<Set<String>> covers = new ArrayList<Set<String>>();
+		for(Relation reln : inputs) {
+			if(reln.getTupleCount() == 0) {
+				return 0;
+			}
+			Set<String> covered = new HashSet<String>();
+			for(Attribute attr : reln.getAttributes()) {
+				if(classes.containsKey(attr.getName())) {
+					covered.add(find(classes, attr.getName()));
+				}
+			}
+			covers.add(covered);
+		}
+		Set<String> all = new HashSet<String>();
+		for(String attr : classes.keySet()) {
+			all.add(find(classes, attr));
+		}
+		double best = 0;
+		for(Relation reln : inputs) {
+			best += Math.log(reln.getTupleCount());
+		}
+		// 3^n candidate covers; beyond AGM_SEARCH_LIMIT inputs only the product is used
+		if(n <= AGM_SEARCH_LIMIT) {
+			int[] x = new int[n];
+			int combinations = (int)Math.pow(3, n);
+			for(int c=0;c<combinations;c++) {
+				int rest = c;
+				double exponent = 0;
+				for(int i=0;i<n;i++) {
+					x[i] = rest % 3;
+					rest /= 3;
+					exponent += x[i] / 2.0 * Math.log(inputs.get(i).getTupleCount());
+				}
+				if(exponent >= best) {
+					continue;
+				}
+				Map<String, Integer> weight = new HashMap<String, Integer>();
+				for(int i=0;i<n;i++) {
+					for(String cls : covers.get(i)) {
+						Integer w = weight.get(cls);
+						weight.put(cls, (w == null ? 0 : w) + x[i]);
+					}
+				}
+				boolean covering = true;
+				for(String cls : all) {
+					Integer w = weight.get(cls);
+					if(w == null || w < 2) {
+						covering = false;
+						break;
+					}
+				}
+				if(covering) {
+					best = exponent;
+				}
+			}
+		}
+		return (long)Math.min(Math.ceil(Math.exp(best) - 1e-9), Integer.MAX_VALUE);
+	}
+
+	/*
+	 * the classes of join attributes made equal by the predicates, as a union-find
+	 * forest over attribute names
+	 */
+	private static Map<String, String> attributeClasses(List<Predicate> predicates) {
+		Map<String, String> parent = new HashMap<String, String>();
+		for(Predicate p : predicates) {
+			String left = p.getLeftAttribute().getName();
+			String right = p.getRightAttribute().getName();
+			if(!parent.containsKey(left)) {
+				parent.put(left, left);
+			}
+			if(!parent.containsKey(right)) {
+				parent.put(right, right);
+			}
+			parent.put(find(parent, left), find(parent, right));
+		}
+		return parent;
+	}
+
+	private static String find(Map<String, String> parent, String attr) {
+		while(!parent.get(attr).equals(attr)) {
+			attr = parent.get(attr);
+		}
+		return attr;
+	}
+
+	private static int valueCount(List<Relation> inputs, Attribute attr) {
+		for(Relation reln : inputs) {
+			if(reln.getAttributes().contains(attr)) {
+				return reln.getAttribute(attr).getValueCount();
+			}
+		}
+		return 1;
+	}
+
+	/*
+	 * cost of evaluating a join with its physical method, on top of its output;
+	 * zero for a logical join
+	 *
+	 * an index nested loop join never runs the plan of its right input: it probes the
+	 * index of the scanned relation once per left tuple, T(R) x probe cost, so the cost
+	 * already counted for the right input is taken off again
+	 */
+	public int joinCost(Join op) {
+		JoinMethod method = op.getMethod();
+		if(method == null) {
+			return 0;
+		}
+		Relation left = op.getLeft().getOutput();
+		Relation right = op.getRight().getOutput();
+		if(method == JoinMethod.INDEX_NESTED_LOOP) {
+			Scan inner = baseScan(op.getRight());
+			Index index = inner == null ? null : ((NamedRelation) inner.getRelation()).getIndex(op.getPredicate().getRightAttribute());
+			if(index == null) {
+				return Integer.MAX_VALUE;
+			}
+			long probes = (long)left.getTupleCount() * probeCost(index, inner.getRelation());
+			return (int)Math.min(probes - new Estimator().estimate(op.getRight()), Integer.MAX_VALUE);
+		}
+		return joinCost(method, left, right,
+				isSortedOn(op.getLeft(), op.getPredicate().getLeftAttribute()),
+				isSortedOn(op.getRight(), op.getPredicate().getRightAttribute()));
+	}
+
+	/*
+	 * the scan at the bottom of a chain of selects and projects, or null if the
+	 * operator is not such a chain
+	 */
+	public Scan baseScan(Operator op) {
+		while(op instanceof UnaryOperator) {
+			op = ((UnaryOperator) op).getInput();
+		}
+		return op instanceof Scan ? (Scan) op : null;
+	}
+
+	/*
+	 * cost of evaluating a join with a physical method, on top of its output
+	 * nested loop: T(R)T(S)
+	 * hash: T(R)+T(S), one pass to build and one to probe
+	 * merge: T(R)+T(S), plus the cost of sorting each input that is not already in join order
+	 */
+	public int joinCost(JoinMethod method, Relation left, Relation right, boolean leftSorted, boolean rightSorted) {
+		long leftCount = left.getTupleCount();
+		long rightCount = right.getTupleCount();
+		long joinCost;
+
+		switch(method) {
+		case NESTED_LOOP:
+			joinCost = leftCount * rightCount;
+			break;
+		case HASH:
+			joinCost = leftCount + rightCount;
+			break;
+		case MERGE:
+			joinCost = leftCount + rightCount;
+			if(!leftSorted) {
+				joinCost += sortCost(left);
+			}
+			if(!rightSorted) {
+				joinCost += sortCost(right);
+			}
+			break;
+		default:
+			joinCost = 0;
+		}
+		return (int)Math.min(joinCost, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * sorting T(R) tuples costs T(R)*log2(T(R))
+	 */
+	public int sortCost(Relation reln) {
+		int count = reln.getTupleCount();
+		if(count <= 1) {
+			return 0;
+		}
+		long sortCost = (long)Math.ceil(count * (Math.log(count) / Math.log(2)));
+		return (int)Math.min(sortCost, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * the output of a merge join is sorted on both of its join attributes;
+	 * select, project and semi-join keep the order of their (left) input; an exchange or a hash aggregate does not
+	 * the output of an ascending top-k is sorted on its attribute
+	 */
+	public boolean isSortedOn(Operator op, Attribute attr) {
+		if(op instanceof Exchange || op instanceof Aggregate) {
+			return false;
+		}
+		if(op instanceof TopK) {
+			TopK topK = (TopK) op;
+			return !topK.isDescending() && topK.getAttribute().equals(attr);
+		}
+		if(op instanceof Join) {
+			Join join = (Join) op;
+			return join.getMethod() == JoinMethod.MERGE &&
+					(join.getPredicate().getLeftAttribute().equals(attr) ||
+					 join.getPredicate().getRightAttribute().equals(attr));
+		}
+		if(op instanceof SemiJoin) {
+			return isSortedOn(((SemiJoin) op).getLeft(), attr);
+		}
+		if(op instanceof UnaryOperator) {
+			return isSortedOn(((UnaryOperator) op).getInput(), attr);
+		}
+		return false;
+	}
+
+	/*
+	 * a tuple count too large for an int is taken as Integer.MAX_VALUE
+	 */
+	private static int saturate(long count) {
+		return (int)Math.min(count, Integer.MAX_VALUE);
 	}
 
 	/*
@@ -245,6 +1227,6 @@ public class Estimator implements PlanVisitor {
 	public int estimate(Operator plan) {
 		this.cost = 0;
 		plan.accept(this);
-		return this.cost;
+		return (int)Math.min(this.cost, Integer.MAX_VALUE);
 	}
 }
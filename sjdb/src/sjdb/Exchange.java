@@ -0,0 +1,71 @@
+package sjdb;
+
+/**
+ * This class implements an Exchange operator, which marks the boundary
+ * between parts of a plan that are evaluated in parallel by a number of
+ * workers, and moves tuples between the workers as given by its type.
+ * The operators below an exchange process the morsels of their scans
+ * handed out to the workers; the exchange does not change the tuples
+ * themselves.
+ */
+public class Exchange extends UnaryOperator {
+	private ExchangeType type;
+	private Attribute attribute;
+	private int degree;
+
+	/**
+	 * Create a new exchange that gathers or broadcasts its input
+	 * @param input Child operator
+	 * @param type GATHER or BROADCAST
+	 * @param degree Number of workers
+	 */
+	public Exchange(Operator input, ExchangeType type, int degree) {
+		this(input, type, null, degree);
+	}
+
+	/**
+	 * Create a new exchange
+	 * @param input Child operator
+	 * @param type Kind of exchange
+	 * @param attribute Attribute hashed to choose a worker (REPARTITION
+	 * only), or null
+	 * @param degree Number of workers
+	 */
+	public Exchange(Operator input, ExchangeType type, Attribute attribute, int degree) {
+		super(input);
+		this.type = type;
+		this.attribute = attribute;
+		this.degree = degree;
+	}
+
+	/**
+	 * @return the kind of exchange
+	 */
+	public ExchangeType getType() {
+		return this.type;
+	}
+
+	/**
+	 * @return the attribute hashed to choose a worker, or null
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * @return the number of workers
+	 */
+	public int getDegree() {
+		return this.degree;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	public String toString() {
+		return this.type + (this.attribute == null ? "" : " [" + this.attribute.getName() + "]") +
+				" x" + this.degree + " (" + getInput().toString() + ")";
+	}
+}
@@ -0,0 +1,21 @@
+package sjdb;
+
+/**
+ * The ways in which an Exchange operator may move tuples between the
+ * workers that evaluate a plan in parallel.
+ */
+public enum ExchangeType {
+	/**
+	 * Collect the tuples of all the workers into a single stream.
+	 */
+	GATHER,
+	/**
+	 * Send each tuple to the worker chosen by hashing its value of an
+	 * attribute, so that tuples with equal values meet at one worker.
+	 */
+	REPARTITION,
+	/**
+	 * Send every tuple to every worker.
+	 */
+	BROADCAST
+}
@@ -0,0 +1,57 @@
+package sjdb;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class implements a Fetch operator, for late materialisation: below
+ * it, the tuples of a named relation carry only the attributes needed for
+ * selects and joins, together with the row id of the tuple they came
+ * from; the Fetch looks each surviving row id up and adds the remaining
+ * attributes of the relation that the query projects.
+ */
+public class Fetch extends UnaryOperator {
+	private NamedRelation relation;
+	private List<Attribute> attributes;
+
+	/**
+	 * Create a new fetch
+	 * @param input Child operator, whose tuples carry row ids of the relation
+	 * @param relation Named relation whose attributes are fetched
+	 * @param attributes Attributes to be fetched
+	 */
+	public Fetch(Operator input, NamedRelation relation, List<Attribute> attributes) {
+		super(input);
+		this.relation = relation;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * @return the named relation whose attributes are fetched
+	 */
+	public NamedRelation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * @return the attributes fetched
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	public String toString() {
+		String ret = "FETCH " + this.relation + " [";
+		Iterator<Attribute> iter = this.attributes.iterator();
+		ret += iter.next().getName();
+		while (iter.hasNext()) {
+			ret += "," + iter.next().getName();
+		}
+		return ret + "] (" + getInput().toString() + ")";
+	}
+}
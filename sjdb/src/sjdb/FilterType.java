@@ -0,0 +1,18 @@
+package sjdb;
+
+/**
+ * The kinds of runtime filter that a join may build from the join
+ * attribute values of its build side.
+ */
+public enum FilterType {
+	/**
+	 * The exact set of join attribute values, for a build side with few
+	 * distinct values.
+	 */
+	KEYSET,
+	/**
+	 * A Bloom filter over the join attribute values, which passes every
+	 * matching tuple and a small fraction of the others.
+	 */
+	BLOOM
+}
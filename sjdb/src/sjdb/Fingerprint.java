@@ -0,0 +1,251 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Computes a fingerprint of a query plan: a string that is the same for
+ * two plans exactly when they compute the same result in the same way, so
+ * that it can be used as the key of a cache of plans or results.
+ *
+ * Attribute names and values are compiled into the fingerprint as they
+ * appear in the plan. The predicate attr1=attr2 is the same as
+ * attr2=attr1, and the inputs of a product or of a logical join may be
+ * given in either order; physical joins keep the order of their inputs,
+ * as their left and right inputs play different parts.
+ */
+public class Fingerprint implements PlanVisitor {
+	private Deque<String> stack = new ArrayDeque<String>();
+	private Set<String> relations = new TreeSet<String>();
+
+	/**
+	 * Compute the fingerprint of the given plan
+	 * @param plan Query plan
+	 */
+	public Fingerprint(Operator plan) {
+		plan.accept(this);
+	}
+
+	/**
+	 * Return the fingerprint of the given plan
+	 * @param plan Query plan
+	 * @return Fingerprint
+	 */
+	public static String of(Operator plan) {
+		return new Fingerprint(plan).toString();
+	}
+
+	/**
+	 * Return a fingerprint of the result of the given plan, which is the same
+	 * for every plan that computes that result, however it does so: the
+	 * named relations read, the predicates applied and the attributes
+	 * output, in their order. The plan must have been estimated. Exchanges and fetches do not
+	 * change the result of a plan; a runtime filter drops the tuples with no
+	 * match in its source, so it is keyed by the result of that source.
+	 * @param plan Query plan
+	 * @return Fingerprint of the result, or null if the plan does more than
+	 * scan, select, project and join (a semi-join reads relations whose
+	 * attributes it does not output, so it is not keyed)
+	 */
+	public static String ofResult(Operator plan) {
+		Set<String> relations = new TreeSet<String>();
+		Set<String> predicates = new TreeSet<String>();
+		if (!collect(plan, relations, predicates)) {
+			return null;
+		}
+		// a result read back in place of the plan must have its columns in the same order
+		List<String> attributes = new ArrayList<String>();
+		for (Attribute a : plan.getOutput().getAttributes()) {
+			attributes.add(a.getName());
+		}
+		return relations.toString() + predicates + attributes;
+	}
+
+	private static boolean collect(Operator op, Set<String> relations, Set<String> predicates) {
+		if (op instanceof Scan) {
+			relations.add(((Scan) op).getRelation().toString());
+		} else if (op instanceof IndexScan) {
+			relations.add(((IndexScan) op).getRelation().toString());
+			predicates.add(predicate(((IndexScan) op).getPredicate()));
+		} else if (op instanceof BitmapScan) {
+			relations.add(((BitmapScan) op).getRelation().toString());
+			for (Predicate p : ((BitmapScan) op).getPredicates()) {
+				predicates.add(predicate(p));
+			}
+		} else if (op instanceof Select) {
+			predicates.add(predicate(((Select) op).getPredicate()));
+		} else if (op instanceof RuntimeFilter) {
+			RuntimeFilter filter = (RuntimeFilter) op;
+			String source = ofResult(filter.getSource());
+			if (source == null) {
+				return false;
+			}
+			predicates.add(filter.getProbeAttribute() + " IN " + filter.getBuildAttribute() + source);
+		} else if (op instanceof Join) {
+			predicates.add(predicate(((Join) op).getPredicate()));
+		} else if (op instanceof MultiwayJoin) {
+			for (Predicate p : ((MultiwayJoin) op).getPredicates()) {
+				predicates.add(predicate(p));
+			}
+		} else if (op instanceof StarJoin) {
+			for (Predicate p : ((StarJoin) op).getPredicates()) {
+				predicates.add(predicate(p));
+			}
+		} else if (op instanceof Aggregate || op instanceof Limit || op instanceof TopK ||
+				op instanceof CachedResult || op instanceof SemiJoin) {
+			return false;
+		}
+		for (Operator input : op.inputs) {
+			if (!collect(input, relations, predicates)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the names of the named relations read by the plan
+	 */
+	public Set<String> getRelations() {
+		return this.relations;
+	}
+
+	public String toString() {
+		return this.stack.peek();
+	}
+
+	public void visit(Scan op) {
+		this.relations.add(op.getRelation().toString());
+		this.stack.push(op.getRelation().toString());
+	}
+
+	public void visit(IndexScan op) {
+		this.relations.add(op.getRelation().toString());
+		this.stack.push("INDEXSCAN " + op.getIndex().getType() + "[" + predicate(op.getPredicate()) + "](" +
+				op.getRelation() + ")");
+	}
+
+	public void visit(BitmapScan op) {
+		this.relations.add(op.getRelation().toString());
+		Set<String> preds = new TreeSet<String>();
+		for (Predicate p : op.getPredicates()) {
+			preds.add(predicate(p));
+		}
+		this.stack.push("BITMAPSCAN" + preds + "(" + op.getRelation() + ")");
+	}
+
+	public void visit(Project op) {
+		this.stack.push("PROJECT" + op.getAttributes() + "(" + this.stack.pop() + ")");
+	}
+
+	public void visit(Select op) {
+		this.stack.push("SELECT[" + predicate(op.getPredicate()) + "](" + this.stack.pop() + ")");
+	}
+
+	public void visit(RuntimeFilter op) {
+		this.stack.push("FILTER " + op.getType() + "[" + op.getProbeAttribute() + " IN " +
+				op.getBuildAttribute() + "](" + this.stack.pop() + ")");
+	}
+
+	public void visit(Exchange op) {
+		this.stack.push(op.getType() + (op.getAttribute() == null ? "" : "[" + op.getAttribute() + "]") +
+				" x" + op.getDegree() + "(" + this.stack.pop() + ")");
+	}
+
+	public void visit(Fetch op) {
+		this.stack.push("FETCH " + op.getRelation() + op.getAttributes() + "(" + this.stack.pop() + ")");
+	}
+
+	public void visit(Aggregate op) {
+		this.stack.push(op.label() + "(" + this.stack.pop() + ")");
+	}
+
+	public void visit(Limit op) {
+		this.stack.push(op.label() + "(" + this.stack.pop() + ")");
+	}
+
+	public void visit(TopK op) {
+		this.stack.push(op.label() + "(" + this.stack.pop() + ")");
+	}
+
+	public void visit(CachedResult op) {
+		this.stack.push("RESULT[" + op.getKey() + "]");
+	}
+
+	public void visit(MultiwayJoin op) {
+		Set<String> inputs = new TreeSet<String>();
+		for (int i = 0; i < op.getInputs().size(); i++) {
+			inputs.add(this.stack.pop());
+		}
+		Set<String> preds = new TreeSet<String>();
+		for (Predicate p : op.getPredicates()) {
+			preds.add(predicate(p));
+		}
+		String ret = "MULTIWAY" + preds;
+		for (String input : inputs) {
+			ret += "(" + input + ")";
+		}
+		this.stack.push(ret);
+	}
+
+	public void visit(StarJoin op) {
+		String fact = this.stack.pop();
+		Set<String> dimensions = new TreeSet<String>();
+		for (int i = 0; i < op.getDimensions().size(); i++) {
+			dimensions.add(this.stack.pop());
+		}
+		Set<String> preds = new TreeSet<String>();
+		for (Predicate p : op.getPredicates()) {
+			preds.add(predicate(p));
+		}
+		String ret = "STAR" + preds + "(" + fact + ")";
+		for (String dimension : dimensions) {
+			ret += "(" + dimension + ")";
+		}
+		this.stack.push(ret);
+	}
+
+	public void visit(Product op) {
+		String right = this.stack.pop();
+		String left = this.stack.pop();
+		this.stack.push("TIMES(" + unordered(left, right) + ")");
+	}
+
+	public void visit(SemiJoin op) {
+		String right = this.stack.pop();
+		String left = this.stack.pop();
+		Set<String> preds = new TreeSet<String>();
+		for (Predicate p : op.getPredicates()) {
+			preds.add(predicate(p));
+		}
+		this.stack.push((op.isAnti() ? "ANTI" : "SEMI") + preds + "(" + left + ")(" + right + ")");
+	}
+
+	public void visit(Join op) {
+		String right = this.stack.pop();
+		String left = this.stack.pop();
+		String pred = "[" + predicate(op.getPredicate()) + "]";
+		if (op.getMethod() == null) {
+			this.stack.push("JOIN" + pred + "(" + unordered(left, right) + ")");
+		} else {
+			this.stack.push(op.getMethod() + " JOIN" + pred + "(" + left + ")(" + right + ")");
+		}
+	}
+
+	private static String unordered(String a, String b) {
+		return a.compareTo(b) <= 0 ? a + ")(" + b : b + ")(" + a;
+	}
+
+	private static String predicate(Predicate p) {
+		if (p.equalsValue()) {
+			return p.toString();
+		}
+		String left = p.getLeftAttribute().getName();
+		String right = p.getRightAttribute().getName();
+		return left.compareTo(right) <= 0 ? left + "=" + right : right + "=" + left;
+	}
+}
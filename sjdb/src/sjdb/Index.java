@@ -0,0 +1,39 @@
+package sjdb;
+
+/**
+ * This class represents an index on an attribute of a named relation.
+ * Like the other statistics, indexes are stored on the named relation
+ * that they belong to.
+ */
+public class Index {
+	private Attribute attribute;
+	private IndexType type;
+
+	/**
+	 * Create a new index
+	 * @param attribute Indexed attribute
+	 * @param type Kind of index
+	 */
+	public Index(Attribute attribute, IndexType type) {
+		this.attribute = attribute;
+		this.type = type;
+	}
+
+	/**
+	 * @return the indexed attribute
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * @return the kind of index
+	 */
+	public IndexType getType() {
+		return this.type;
+	}
+
+	public String toString() {
+		return this.type + "(" + this.attribute + ")";
+	}
+}
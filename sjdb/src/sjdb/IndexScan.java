@@ -0,0 +1,66 @@
+package sjdb;
+
+/**
+ * This class implements an IndexScan operator, which feeds the tuples of a
+ * NamedRelation that satisfy a predicate of the form attr=value into a query
+ * plan, by looking the value up in an index on the attribute instead of
+ * reading the whole relation.
+ */
+public class IndexScan extends Operator {
+	private NamedRelation relation;
+	private Index index;
+	private Predicate predicate;
+
+	/**
+	 * Create a new index scan
+	 * @param relation Named relation to be scanned
+	 * @param index Index on the predicate's attribute
+	 * @param predicate Predicate of the form attr=value
+	 */
+	public IndexScan(NamedRelation relation, Index index, Predicate predicate) {
+		this.relation = relation;
+		this.index = index;
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Return the named relation to be scanned
+	 * @return Named relation to be scanned
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the index used to find the tuples
+	 * @return Index
+	 */
+	public Index getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Return the predicate looked up in the index
+	 * @return Predicate of the form attr=value
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "INDEXSCAN " + this.index.getType() + " [" + this.predicate.toString() + "] (" +
+				this.relation.toString() + ")";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		// 和scan一样，index scan一定是查询树的底部
+		visitor.visit(this);
+	}
+}
@@ -0,0 +1,25 @@
+package sjdb;
+
+/**
+ * The kinds of index that may be declared on an attribute of a named
+ * relation.
+ */
+public enum IndexType {
+	/**
+	 * A hash index, which finds the tuples with a given value in a single
+	 * probe.
+	 */
+	HASH,
+	/**
+	 * A B-tree index, which finds the tuples with a given value by
+	 * descending the tree from its root.
+	 */
+	BTREE,
+	/**
+	 * A bitmap index, which keeps a compressed bitmap of the matching
+	 * tuples for each value of a low-cardinality attribute, so that
+	 * several attr=value predicates can be combined before any tuple is
+	 * fetched.
+	 */
+	BITMAP
+}
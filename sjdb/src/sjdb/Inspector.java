@@ -14,6 +14,20 @@ public class Inspector implements PlanVisitor {
 		System.out.println("  out: " + op.getOutput().render());
 	}
 
+	@Override
+	public void visit(IndexScan op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getRelation().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(BitmapScan op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getRelation().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
 	@Override
 	public void visit(Project op) {
 		// TODO Auto-generated method stub
@@ -30,6 +44,81 @@ public class Inspector implements PlanVisitor {
 		System.out.println("  out: " + op.getOutput().render());
 	}
 
+	@Override
+	public void visit(RuntimeFilter op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(Exchange op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(Fetch op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(Aggregate op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(Limit op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(TopK op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(CachedResult op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getResult().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(MultiwayJoin op) {
+		System.out.println(op.toString());
+		for (Operator input : op.getInputs()) {
+			System.out.println("  in:  " + input.getOutput().render());
+		}
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(StarJoin op) {
+		System.out.println(op.toString());
+		for (Operator input : op.getInputs()) {
+			System.out.println("  in:  " + input.getOutput().render());
+		}
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
+	@Override
+	public void visit(SemiJoin op) {
+		System.out.println(op.toString());
+		System.out.println("  l: " + op.getLeft().getOutput().render());
+		System.out.println("  r: " + op.getRight().getOutput().render());
+		System.out.println("  o: " + op.getOutput().render());
+	}
+
 	@Override
 	public void visit(Product op) {
 		// TODO Auto-generated method stub
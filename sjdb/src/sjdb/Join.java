@@ -6,6 +6,10 @@ package sjdb;
  */
 public class Join extends BinaryOperator {
 	private Predicate predicate;
+	/**
+	 * The physical join algorithm, or null for a logical join
+	 */
+	private JoinMethod method;
 	/**
 	 * Create a new join operator.
 	 * @param left Left child operator
@@ -13,13 +17,33 @@ public class Join extends BinaryOperator {
 	 * @param predicate Join predicate  (attr=attr)
 	 */
 	public Join(Operator left, Operator right, Predicate predicate) {
+		this(left, right, predicate, null);
+	}
+
+	/**
+	 * Create a new join operator evaluated with the given algorithm.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate  (attr=attr)
+	 * @param method Physical join algorithm
+	 */
+	public Join(Operator left, Operator right, Predicate predicate, JoinMethod method) {
 		super(left, right);
 		this.predicate = predicate;
+		this.method = method;
 	}
 
 	public Predicate getPredicate() {
 		return this.predicate;
 	}
+
+	/**
+	 * Return the physical join algorithm, or null if this join is logical
+	 * @return Join algorithm
+	 */
+	public JoinMethod getMethod() {
+		return this.method;
+	}
 	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
@@ -35,7 +59,8 @@ public class Join extends BinaryOperator {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return "(" + this.getLeft().toString() + ") JOIN [" + 
+		return "(" + this.getLeft().toString() + ") " +
+				(this.method == null ? "" : this.method + " ") + "JOIN [" +
 				this.getPredicate().toString() +
 				"] (" + this.getRight().toString() + ")";
 	}
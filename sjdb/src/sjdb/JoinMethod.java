@@ -0,0 +1,29 @@
+package sjdb;
+
+/**
+ * The physical algorithms that may be used to evaluate a Join. A Join
+ * without a method is a purely logical join, and is costed by the
+ * Estimator on its output alone.
+ */
+public enum JoinMethod {
+	/**
+	 * Compare every tuple of the left input with every tuple of the right.
+	 */
+	NESTED_LOOP,
+	/**
+	 * Build a hash table on one input and probe it with the other.
+	 */
+	HASH,
+	/**
+	 * Merge two inputs sorted on the join attributes, sorting them first
+	 * if they are not already in that order.
+	 */
+	MERGE,
+	/**
+	 * For each tuple of the left input, look up the matching tuples of the
+	 * right input in an index on its join attribute. The right input must
+	 * be a scan of a named relation, possibly with selects or projects
+	 * applied to the fetched tuples.
+	 */
+	INDEX_NESTED_LOOP
+}
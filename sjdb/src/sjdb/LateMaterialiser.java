@@ -0,0 +1,172 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Late materialisation of an optimised plan, driven by the projection at its root:
+ * the attributes of a relation that are projected by the query but not used by any
+ * select or join are dropped from the tuples of the relation as soon as it is read,
+ * the tuples carry the relation's row ids through the joins instead, and a Fetch
+ * below the root adds the attributes back for the rows that survive.
+ *
+ * Carrying an attribute value through an operator costs one unit, as does carrying
+ * a row id, and fetching a row by its row id costs Estimator.INDEX_FETCH_COST. A
+ * relation's attributes are only fetched late when that moves fewer values through
+ * the plan, which is the case when the relation's attributes are wide and the joins
+ * above it are selective.
+ */
+public class LateMaterialiser {
+
+    public Operator plan(Operator plan) {
+        if(!(plan instanceof Project) || !hasJoin(plan)) {
+            return plan;
+        }
+        Project root = (Project) plan;
+        Estimator estimator = new Estimator();
+        estimator.estimate(plan);
+        Set<Attribute> needed = new HashSet<>();
+        neededAttributes(plan, needed);
+        List<Operator> leaves = new ArrayList<>();
+        leaves(plan, leaves);
+
+        for(Operator leaf : leaves) {
+            NamedRelation reln = relationOf(leaf);
+            List<Attribute> late = new ArrayList<>();
+            List<Attribute> keys = new ArrayList<>();
+            for(Attribute a : reln.getAttributes()) {
+                if(needed.contains(a)) {
+                    keys.add(a);
+                }else if(root.getAttributes().contains(a)) {
+                    late.add(a);
+                }
+            }
+            // 没有连接属性的表（只出现在笛卡尔积里）不做延迟物化
+            if(late.isEmpty() || keys.isEmpty()) {
+                continue;
+            }
+            List<Operator> path = new ArrayList<>();
+            findPath(root.getInput(), leaf, path);
+            long carried = 0;
+            long rowIds = 0;
+            for(Operator op : path) {
+                carried += (long) op.getOutput().getTupleCount() * late.size();
+                rowIds += op.getOutput().getTupleCount();
+            }
+            long fetched = (long) root.getInput().getOutput().getTupleCount() * Estimator.INDEX_FETCH_COST;
+            if(carried <= rowIds + fetched) {
+                continue;
+            }
+
+            // drop the late attributes from the projects between the leaf and the root
+            path.add(root);
+            for(int i=path.size()-2;i>0;i--) {
+                if(path.get(i) instanceof Project) {
+                    Project project = (Project) path.get(i);
+                    List<Attribute> kept = new ArrayList<>(project.getAttributes());
+                    kept.removeAll(late);
+                    replace(path.get(i+1), project, kept.isEmpty() ? project.getInput() : new Project(project.getInput(), kept));
+                }
+            }
+            if(!(path.get(1) instanceof Project)) {
+                replace(path.get(1), leaf, new Project(leaf, keys));
+            }
+            root.inputs.set(0, new Fetch(root.getInput(), reln, late));
+            estimator.estimate(plan);
+        }
+        return plan;
+    }
+
+    private boolean hasJoin(Operator op) {
+        if(op instanceof Join || op instanceof Product) {
+            return true;
+        }
+        for(Operator input : op.inputs) {
+            if(hasJoin(input)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * the attributes used by the predicates of the plan
+     */
+    private void neededAttributes(Operator op, Set<Attribute> needed) {
+        List<Predicate> predicates = new ArrayList<>();
+        if(op instanceof Select) {
+            predicates.add(((Select) op).getPredicate());
+        }else if(op instanceof Join) {
+            predicates.add(((Join) op).getPredicate());
+        }else if(op instanceof MultiwayJoin) {
+            predicates.addAll(((MultiwayJoin) op).getPredicates());
+        }else if(op instanceof StarJoin) {
+            predicates.addAll(((StarJoin) op).getPredicates());
+        }else if(op instanceof SemiJoin) {
+            predicates.addAll(((SemiJoin) op).getPredicates());
+        }else if(op instanceof IndexScan) {
+            predicates.add(((IndexScan) op).getPredicate());
+        }else if(op instanceof BitmapScan) {
+            predicates.addAll(((BitmapScan) op).getPredicates());
+        }else if(op instanceof Aggregate) {
+            needed.addAll(((Aggregate) op).getGroupBy());
+            for(AggregateCall call : ((Aggregate) op).getCalls()) {
+                if(call.getAttribute() != null) {
+                    needed.add(call.getAttribute());
+                }
+            }
+        }else if(op instanceof RuntimeFilter) {
+            needed.add(((RuntimeFilter) op).getProbeAttribute());
+            needed.add(((RuntimeFilter) op).getBuildAttribute());
+        }
+        for(Predicate p : predicates) {
+            needed.add(p.getLeftAttribute());
+            if(!p.equalsValue()) {
+                needed.add(p.getRightAttribute());
+            }
+        }
+        for(Operator input : op.inputs) {
+            neededAttributes(input, needed);
+        }
+    }
+
+    private void leaves(Operator op, List<Operator> leaves) {
+        if(relationOf(op) != null) {
+            leaves.add(op);
+        }
+        for(Operator input : op.inputs) {
+            leaves(input, leaves);
+        }
+    }
+
+    private NamedRelation relationOf(Operator op) {
+        if(op instanceof Scan) {
+            return (NamedRelation) ((Scan) op).getRelation();
+        }else if(op instanceof IndexScan) {
+            return (NamedRelation) ((IndexScan) op).getRelation();
+        }else if(op instanceof BitmapScan) {
+            return (NamedRelation) ((BitmapScan) op).getRelation();
+        }
+        return null;
+    }
+
+    /*
+     * the operators from the target up to op, in that order
+     */
+    private boolean findPath(Operator op, Operator target, List<Operator> path) {
+        if(op == target) {
+            path.add(op);
+            return true;
+        }
+        for(Operator input : op.inputs) {
+            if(findPath(input, target, path)) {
+                path.add(op);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void replace(Operator parent, Operator child, Operator replacement) {
+        parent.inputs.set(parent.inputs.indexOf(child), replacement);
+    }
+}
@@ -0,0 +1,43 @@
+package sjdb;
+
+/**
+ * This class implements a Limit operator, which passes on the first tuples
+ * of its input, up to a given count, and then stops: the operators in the
+ * pipeline below it need only produce as many tuples as it asks for.
+ */
+public class Limit extends UnaryOperator {
+	private int count;
+
+	/**
+	 * Create a new limit
+	 * @param input Child operator
+	 * @param count Largest number of tuples output
+	 */
+	public Limit(Operator input, int count) {
+		super(input);
+		this.count = count;
+	}
+
+	/**
+	 * @return the largest number of tuples output
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/**
+	 * @return the operator name and count, without the input
+	 */
+	public String label() {
+		return "LIMIT " + this.count;
+	}
+
+	public String toString() {
+		return label() + " (" + getInput().toString() + ")";
+	}
+}
@@ -0,0 +1,125 @@
+package sjdb;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Plans a query with a Limit or a TopK at its root. The input of the limit is optimised
+ * on its own, for its whole output, and the limit is put back on top; the plan is then
+ * re-costed under the limit's row goal, which the Estimator takes into account by scaling
+ * the cost of the pipeline that produces the output.
+ *
+ * A plan that is cheapest for the whole output is often not the one that produces its
+ * first tuples fastest: a hash join must build its whole left input before the first
+ * probe, whereas an index nested loop join produces its first tuples at once. So the
+ * joins of the plan are revisited one at a time, trying every join method with the
+ * inputs either way round, and a change is kept whenever the plan gets cheaper under
+ * the row goal, until no change helps.
+ */
+public class LimitPlanner {
+
+    /**
+     * @return true if the plan has a limit or a top-k at its root
+     */
+    public static boolean hasLimit(Operator plan) {
+        return plan instanceof Limit || plan instanceof TopK;
+    }
+
+    /**
+     * Optimise a plan with a limit at its root, using the given optimiser for its input
+     * @param plan Canonical query plan
+     * @param optimiser Join optimiser, applied to the plan below the limit
+     * @return Optimised plan
+     */
+    public static Operator optimise(Operator plan, Function<Operator, Operator> optimiser) {
+        if(!hasLimit(plan)) {
+            return optimiser.apply(plan);
+        }
+        Operator input = optimiser.apply(((UnaryOperator) plan).getInput());
+        Operator root = plan instanceof Limit ? new Limit(input, ((Limit) plan).getCount()) :
+                new TopK(input, ((TopK) plan).getAttribute(), ((TopK) plan).isDescending(), ((TopK) plan).getCount());
+
+        Estimator estimator = new Estimator();
+        int lowestCost = estimator.estimate(root);
+        boolean improved = true;
+        while(improved) {
+            improved = false;
+            List<Slot> joins = new ArrayList<>();
+            joins(root, joins);
+            for(Slot slot : joins) {
+                Join current = (Join) slot.parent.inputs.get(slot.index);
+                Join best = current;
+                for(Join alternative : alternatives(current)) {
+                    slot.parent.inputs.set(slot.index, alternative);
+                    int cost = estimator.estimate(root);
+                    if(cost < lowestCost) {
+                        lowestCost = cost;
+                        best = alternative;
+                        improved = true;
+                    }
+                }
+                slot.parent.inputs.set(slot.index, best);
+                // the joins below a replaced join now hang from the new one
+                if(improved) {
+                    break;
+                }
+            }
+        }
+        root.accept(estimator);
+        return root;
+    }
+
+    /*
+     * the joins of the plan, with the operator above each; a join with a runtime filter
+     * below it is left alone, as the filter relies on the join building its left input first
+     */
+    private static void joins(Operator op, List<Slot> slots) {
+        for(int i=0;i<op.inputs.size();i++) {
+            Operator input = op.inputs.get(i);
+            if(input instanceof Join && !hasRuntimeFilter(input)) {
+                slots.add(new Slot(op, i));
+            }
+            joins(input, slots);
+        }
+    }
+
+    private static boolean hasRuntimeFilter(Operator op) {
+        if(op instanceof RuntimeFilter) {
+            return true;
+        }
+        for(Operator input : op.inputs) {
+            if(hasRuntimeFilter(input)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * the join with every physical method, either way round; a logical join is only turned round
+     */
+    private static List<Join> alternatives(Join join) {
+        List<Join> ret = new ArrayList<>();
+        Predicate p = join.getPredicate();
+        Predicate reversed = new Predicate(p.getRightAttribute(), p.getLeftAttribute());
+        List<JoinMethod> methods = join.getMethod() == null ?
+                Collections.<JoinMethod>singletonList(null) : Arrays.asList(JoinMethod.values());
+        for(JoinMethod method : methods) {
+            if(method != join.getMethod()) {
+                ret.add(new Join(join.getLeft(), join.getRight(), p, method));
+            }
+            ret.add(new Join(join.getRight(), join.getLeft(), reversed, method));
+        }
+        return ret;
+    }
+
+    private static class Slot {
+        private final Operator parent;
+        private final int index;
+
+        private Slot(Operator parent, int index) {
+            this.parent = parent;
+            this.index = index;
+        }
+    }
+}
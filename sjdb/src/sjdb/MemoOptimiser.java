@@ -0,0 +1,684 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * A top-down, memo-based optimiser in the style of Cascades.
+ *
+ * The canonical plan is copied into a memo of groups, where a group holds
+ * logically equivalent expressions: the same named relations with the same
+ * predicates applied. Transformation rules (select pushdown, join
+ * commutativity and join associativity) add expressions to the groups until
+ * no rule produces anything new. Implementation rules then turn every
+ * expression into physical operators (nested loop, hash and merge joins),
+ * and the cheapest plan is searched top-down, pruning any alternative whose
+ * cost already exceeds the best plan found so far. The winner of each group
+ * is memoised per required sort order, so that a merge join can ask for
+ * inputs that are already sorted on its join attributes; when no expression
+ * delivers that order, an enforcer sorts the cheapest unordered plan with a
+ * top-k that keeps every tuple.
+ */
+public class MemoOptimiser implements PlanVisitor {
+    private Catalogue catalogue;
+    private Estimator estimator = new Estimator();
+    // groups are indexed by their logical key, so equivalent expressions meet in the same group
+    private Map<String, Group> groups = new HashMap<>();
+    // groups of the operators visited so far, used to copy the canonical plan into the memo
+    private Deque<Group> visited = new ArrayDeque<>();
+    private int exprCount = 0;
+
+    public MemoOptimiser(Catalogue catalogue) {
+        this.catalogue = catalogue;
+    }
+
+    // 沿用项目的访问者设计模式，后序遍历原始查询树，把每个operator复制进memo
+    @Override
+    public void visit(Scan op) {
+        Scan scan = new Scan((NamedRelation) op.getRelation());
+        visited.push(insert(new Expr(Kind.SCAN, scan, null, null)));
+    }
+
+    @Override
+    public void visit(IndexScan op) {
+        Scan scan = new Scan((NamedRelation) op.getRelation());
+        Group input = insert(new Expr(Kind.SCAN, scan, null, null));
+        visited.push(insert(new Expr(Kind.SELECT, null, null, op.getPredicate(), input)));
+    }
+
+    @Override
+    public void visit(BitmapScan op) {
+        Scan scan = new Scan((NamedRelation) op.getRelation());
+        Group input = insert(new Expr(Kind.SCAN, scan, null, null));
+        for(Predicate p : op.getPredicates()) {
+            input = insert(new Expr(Kind.SELECT, null, null, p, input));
+        }
+        visited.push(input);
+    }
+
+    @Override
+    public void visit(Project op) {
+        Group input = visited.pop();
+        visited.push(insert(new Expr(Kind.PROJECT, null, op.getAttributes(), null, input)));
+    }
+
+    @Override
+    public void visit(Select op) {
+        Group input = visited.pop();
+        visited.push(insert(new Expr(Kind.SELECT, null, null, op.getPredicate(), input)));
+    }
+
+    // a runtime filter only drops tuples that the join above it would drop anyway
+    @Override
+    public void visit(RuntimeFilter op) {
+    }
+
+    // an exchange only moves tuples between workers
+    @Override
+    public void visit(Exchange op) {
+    }
+
+    // fetched attributes are only added back for the root projection
+    @Override
+    public void visit(Fetch op) {
+    }
+
+    // aggregates are put back by AggregatePlanner once their input is optimised
+    @Override
+    public void visit(Aggregate op) {
+    }
+
+    // and so are limits, by LimitPlanner
+    @Override
+    public void visit(Limit op) {
+    }
+
+    @Override
+    public void visit(TopK op) {
+    }
+
+    // cached results are only substituted into optimised plans
+    @Override
+    public void visit(CachedResult op) {
+    }
+
+    // a multiway join is only considered for the whole query, by MultiwayJoinPlanner
+    @Override
+    public void visit(MultiwayJoin op) {
+    }
+
+    // and so is a star join, by StarJoinPlanner
+    @Override
+    public void visit(StarJoin op) {
+    }
+
+    // semi-joins are placed by SemiJoinPlanner once the outer query is optimised
+    @Override
+    public void visit(SemiJoin op) {
+    }
+
+    @Override
+    public void visit(Product op) {
+        Group right = visited.pop();
+        Group left = visited.pop();
+        visited.push(insert(new Expr(Kind.PRODUCT, null, null, null, left, right)));
+    }
+
+    @Override
+    public void visit(Join op) {
+        Group right = visited.pop();
+        Group left = visited.pop();
+        visited.push(insert(new Expr(Kind.JOIN, null, null, orient(op.getPredicate(), left), left, right)));
+    }
+
+    public Operator optimise(Operator plan) {
+        // the input of a limit, an aggregate or a semi-join is optimised on its own, and the operator put back on top
+        if(LimitPlanner.hasLimit(plan)) {
+            return LimitPlanner.optimise(plan, this::optimise);
+        }
+        if(AggregatePlanner.hasAggregate(plan)) {
+            return AggregatePlanner.optimise(plan, this::optimise);
+        }
+        if(SemiJoinPlanner.hasSemiJoin(plan)) {
+            return SemiJoinPlanner.optimise(plan, this::optimise);
+        }
+        plan.accept(this);
+        Group root = visited.pop();
+        explore(root);
+        // costs are carried as longs, so even a plan whose estimate saturates is under this bound
+        Winner best = optimiseGroup(root, null, Long.MAX_VALUE);
+        if(best == null) {
+            throw new IllegalStateException("no plan found for " + plan);
+        }
+        // sideways information passing between the joins of the chosen plan
+        Operator binary = new RuntimeFilterPlanner().plan(best.plan);
+        // a cyclic query may be cheaper with all its relations joined at once,
+        // and a star query with the fact relation probing all its dimensions at once
+        QueryGraph graph = new QueryGraph(plan);
+        return StarJoinPlanner.plan(graph, MultiwayJoinPlanner.plan(graph, binary));
+    }
+
+    /**
+     * Apply the transformation rules to every expression reachable from the root
+     * group, until a full pass adds no new expression to the memo.
+     */
+    private void explore(Group root) {
+        int before;
+        do {
+            before = exprCount;
+            exploreGroup(root, new HashSet<Group>());
+        } while(exprCount != before);
+    }
+
+    private void exploreGroup(Group group, Set<Group> explored) {
+        if(!explored.add(group)) {
+            return;
+        }
+        // rules may add expressions to this group while we are iterating over it
+        for(int i=0;i<group.exprs.size();i++) {
+            Expr expr = group.exprs.get(i);
+            for(Group child : expr.children) {
+                exploreGroup(child, explored);
+            }
+            switch(expr.kind) {
+            case SELECT:
+                pushSelect(expr);
+                break;
+            case PRODUCT:
+            case JOIN:
+                commute(expr);
+                associate(expr);
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Select pushdown: move SELECT(p, c) below the products, joins and other selects in c,
+     * turning a select over a product into a join when p relates its two inputs. A select
+     * over a product is then dropped from the search: the Estimator charges a product only
+     * its output, so an unpushed SELECT(a=b, PRODUCT(A, B)) would always look cheaper than
+     * the join it stands for.
+     */
+    private void pushSelect(Expr select) {
+        Predicate p = select.predicate;
+        Group input = select.children.get(0);
+        for(Expr e : new ArrayList<>(input.exprs)) {
+            if(e.kind == Kind.SELECT) {
+                // SELECT(p, SELECT(q, d)) -> SELECT(q, SELECT(p, d))
+                Group inner = insert(new Expr(Kind.SELECT, null, null, p, e.children.get(0)));
+                insert(new Expr(Kind.SELECT, null, null, e.predicate, inner));
+            }else if(e.kind == Kind.PRODUCT || e.kind == Kind.JOIN) {
+                Group a = e.children.get(0);
+                Group b = e.children.get(1);
+                if(covers(a, p)) {
+                    Group inner = insert(new Expr(Kind.SELECT, null, null, p, a));
+                    insert(new Expr(e.kind, null, null, e.predicate, inner, b));
+                }else if(covers(b, p)) {
+                    Group inner = insert(new Expr(Kind.SELECT, null, null, p, b));
+                    insert(new Expr(e.kind, null, null, e.predicate, a, inner));
+                }else if(e.kind == Kind.PRODUCT) {
+                    // SELECT(a=b, PRODUCT(A, B)) -> JOIN(a=b, A, B)
+                    insert(new Expr(Kind.JOIN, null, null, orient(p, a), a, b));
+                }else {
+                    // SELECT(p, JOIN(q, A, B)) -> SELECT(q, JOIN(p, A, B)), so that either predicate can drive the join
+                    Group inner = insert(new Expr(Kind.JOIN, null, null, orient(p, a), a, b));
+                    insert(new Expr(Kind.SELECT, null, null, e.predicate, inner));
+                }
+                // every product in the input group has been rewritten one of these ways
+                if(e.kind == Kind.PRODUCT) {
+                    select.rewritten = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Join commutativity: JOIN(p, A, B) -> JOIN(p, B, A), and likewise for products.
+     */
+    private void commute(Expr expr) {
+        Group a = expr.children.get(0);
+        Group b = expr.children.get(1);
+        Predicate p = expr.predicate == null ? null : orient(expr.predicate, b);
+        insert(new Expr(expr.kind, null, null, p, b, a));
+    }
+
+    /**
+     * Join associativity: X(q, Y(p, A, B), C) -> Y(p, A, X(q, B, C)), where X and Y are joins
+     * or products, provided that q only relates B and C.
+     */
+    private void associate(Expr expr) {
+        Group left = expr.children.get(0);
+        Group c = expr.children.get(1);
+        Predicate q = expr.predicate;
+        for(Expr e : new ArrayList<>(left.exprs)) {
+            if(e.kind != Kind.PRODUCT && e.kind != Kind.JOIN) {
+                continue;
+            }
+            Group a = e.children.get(0);
+            Group b = e.children.get(1);
+            if(q != null && !b.output.getAttributes().contains(q.getLeftAttribute())) {
+                continue;
+            }
+            Group inner = insert(new Expr(expr.kind, null, null, q, b, c));
+            insert(new Expr(e.kind, null, null, e.predicate, a, inner));
+        }
+    }
+
+    /**
+     * Find the cheapest plan for a group that delivers the required sort order (or any
+     * order, if order is null) at a cost below the given bound. Returns null if there is
+     * no such plan.
+     *
+     * Costs are those the Estimator gives the plan itself, so the tuple counts of a
+     * candidate are only known once its inputs have been chosen; a candidate is pruned
+     * as soon as its inputs alone reach the bound.
+     */
+    private Winner optimiseGroup(Group group, Attribute order, long bound) {
+        String property = order == null ? "" : order.getName();
+        Winner winner = group.winners.get(property);
+        if(winner != null) {
+            return winner.cost < bound ? winner : null;
+        }
+        Long failed = group.failed.get(property);
+        if(failed != null && bound <= failed) {
+            return null;
+        }
+
+        Winner best = null;
+        long limit = bound;
+        for(Expr e : group.exprs) {
+            if(e.rewritten) {
+                continue;
+            }
+            Winner w = null;
+            switch(e.kind) {
+            case SCAN:
+                if(order == null) {
+                    w = new Winner(e.scan, e.scan.getOutput().getTupleCount());
+                }
+                break;
+            case SELECT:
+                // select keeps the order of its input
+                w = optimiseUnary(e, order, limit);
+                if(order == null) {
+                    Winner index = optimiseAccessPath(e);
+                    if(index != null && (w == null || index.cost < w.cost)) {
+                        w = index;
+                    }
+                }
+                break;
+            case PROJECT:
+                w = optimiseUnary(e, order, limit);
+                break;
+            case PRODUCT:
+                if(order == null) {
+                    w = optimiseBinary(e, null, null, null, limit);
+                }
+                break;
+            case JOIN:
+                for(JoinMethod method : JoinMethod.values()) {
+                    long methodLimit = w == null ? limit : w.cost;
+                    Winner m = null;
+                    if(method == JoinMethod.MERGE) {
+                        // a merge join delivers its output sorted on the join attributes,
+                        // and asks for its inputs in that order
+                        Attribute leftOrder = e.predicate.getLeftAttribute();
+                        Attribute rightOrder = e.predicate.getRightAttribute();
+                        if(order == null || order.equals(leftOrder) || order.equals(rightOrder)) {
+                            m = optimiseBinary(e, method, leftOrder, rightOrder, methodLimit);
+                        }
+                    }else if(method == JoinMethod.INDEX_NESTED_LOOP) {
+                        if(order == null) {
+                            m = optimiseIndexJoin(e, methodLimit);
+                        }
+                    }else if(order == null) {
+                        m = optimiseBinary(e, method, null, null, methodLimit);
+                    }
+                    if(m != null && m.cost < methodLimit) {
+                        w = m;
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+            if(w != null && w.cost < limit) {
+                best = w;
+                limit = w.cost;
+            }
+        }
+
+        // enforcer: sort the cheapest unordered plan, with a top-k that keeps every tuple
+        if(order != null) {
+            Winner unordered = optimiseGroup(group, null, limit);
+            if(unordered != null) {
+                Operator sort = shallow(new TopK(unordered.plan, order, false, Integer.MAX_VALUE));
+                long sorted = add(unordered.cost, add(estimator.sortCost(unordered.plan.getOutput()),
+                        sort.getOutput().getTupleCount()));
+                if(sorted < limit) {
+                    best = new Winner(sort, sorted);
+                }
+            }
+        }
+
+        if(best != null) {
+            group.winners.put(property, best);
+        }else {
+            group.failed.put(property, failed == null ? bound : Math.max(failed, bound));
+        }
+        return best;
+    }
+
+    private Winner optimiseUnary(Expr e, Attribute order, long limit) {
+        Winner input = optimiseGroup(e.children.get(0), order, limit);
+        if(input == null) {
+            return null;
+        }
+        Operator op = shallow(e.kind == Kind.SELECT ?
+                new Select(input.plan, e.predicate) : new Project(input.plan, e.attributes));
+        return new Winner(op, add(input.cost, op.getOutput().getTupleCount()));
+    }
+
+    /**
+     * Implementation rule for a chain of SELECTs over SCAN(R): read R through its cheapest
+     * access path, which may look one value up in an index, or intersect the bitmaps of
+     * several attr=value predicates, instead of reading the whole relation.
+     */
+    private Winner optimiseAccessPath(Expr e) {
+        List<Predicate> predicates = new ArrayList<>();
+        Scan scan = selectChain(e, predicates);
+        if(scan == null) {
+            return null;
+        }
+        Estimator access = new Estimator();
+        Operator op = QueryGraph.accessPath((NamedRelation) scan.getRelation(), predicates, access);
+        return new Winner(op, access.estimate(op));
+    }
+
+    /*
+     * collect the predicates of a chain of SELECTs down to a SCAN, returning the scan,
+     * or null if the expression is not such a chain
+     */
+    private Scan selectChain(Expr e, List<Predicate> predicates) {
+        if(e.kind == Kind.SCAN) {
+            return e.scan;
+        }
+        if(e.kind != Kind.SELECT) {
+            return null;
+        }
+        for(Expr input : e.children.get(0).exprs) {
+            Scan scan = selectChain(input, predicates);
+            if(scan != null) {
+                predicates.add(e.predicate);
+                return scan;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Implementation rule for an index nested loop join: the right input must stay a scan
+     * of its named relation (with its selects applied to the fetched tuples), and that
+     * relation must have an index on the right join attribute.
+     */
+    private Winner optimiseIndexJoin(Expr e, long limit) {
+        Operator inner = baseAccess(e.children.get(1));
+        if(inner == null || estimator.baseScan(inner) == null) {
+            return null;
+        }
+        NamedRelation reln = (NamedRelation) estimator.baseScan(inner).getRelation();
+        if(reln.getIndex(e.predicate.getRightAttribute()) == null) {
+            return null;
+        }
+        Winner left = optimiseGroup(e.children.get(0), null, limit);
+        if(left == null) {
+            return null;
+        }
+        Join op = (Join) shallow(new Join(left.plan, inner, e.predicate, JoinMethod.INDEX_NESTED_LOOP));
+        // the cost of the right input is counted here and taken off again by joinCost()
+        long local = add(new Estimator().estimate(inner), op.getOutput().getTupleCount());
+        local = add(local, estimator.joinCost(op));
+        return new Winner(op, add(left.cost, local));
+    }
+
+    /*
+     * a plan for the group that only scans a named relation and applies selects to it
+     */
+    private Operator baseAccess(Group group) {
+        for(Expr e : group.exprs) {
+            if(e.kind == Kind.SCAN) {
+                return e.scan;
+            }
+            if(e.kind == Kind.SELECT) {
+                Operator input = baseAccess(e.children.get(0));
+                if(input != null) {
+                    return shallow(new Select(input, e.predicate));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cost a product, or a join with the given method, pruning as soon as its inputs
+     * take the total to the limit.
+     */
+    private Winner optimiseBinary(Expr e, JoinMethod method, Attribute leftOrder, Attribute rightOrder, long limit) {
+        Winner left = optimiseGroup(e.children.get(0), leftOrder, limit);
+        if(left == null) {
+            return null;
+        }
+        Winner right = optimiseGroup(e.children.get(1), rightOrder, limit - left.cost);
+        if(right == null) {
+            return null;
+        }
+        Operator op = shallow(e.kind == Kind.PRODUCT ?
+                new Product(left.plan, right.plan) : new Join(left.plan, right.plan, e.predicate, method));
+        long local = op.getOutput().getTupleCount();
+        if(method != null) {
+            // the sort costs of a merge join have already been paid by its inputs
+            local = add(local, estimator.joinCost(method, left.plan.getOutput(), right.plan.getOutput(), true, true));
+        }
+        return new Winner(op, add(add(left.cost, right.cost), local));
+    }
+
+    // 开销用long累加，溢出时取Long.MAX_VALUE；b可以为负（索引嵌套循环连接的joinCost）
+    private static long add(long a, long b) {
+        if(a == Long.MAX_VALUE || b == Long.MAX_VALUE || (b > 0 && a > Long.MAX_VALUE - b)) {
+            return Long.MAX_VALUE;
+        }
+        return a + b;
+    }
+
+    /**
+     * Add an expression to the memo, creating its group if no equivalent expression
+     * has been seen before.
+     * @return the group holding the expression
+     */
+    private Group insert(Expr expr) {
+        String key = groupKey(expr);
+        Group group = groups.get(key);
+        if(group == null) {
+            group = new Group(groups.size(), repOf(expr));
+            for(Group child : expr.children) {
+                group.relations.addAll(child.relations);
+                group.predicates.addAll(child.predicates);
+            }
+            if(expr.kind == Kind.SCAN) {
+                group.relations.add(expr.scan.toString());
+            }
+            if(expr.predicate != null) {
+                group.predicates.add(predicateKey(expr.predicate));
+            }
+            groups.put(key, group);
+        }
+        if(group.exprKeys.add(exprKey(expr))) {
+            group.exprs.add(expr);
+            exprCount++;
+        }
+        return group;
+    }
+
+    /*
+     * the logical properties of a group: the same relations with the same predicates applied
+     */
+    private static String groupKey(Expr expr) {
+        if(expr.kind == Kind.PROJECT) {
+            return "PROJECT" + expr.attributes + "#" + expr.children.get(0).id;
+        }
+        Set<String> relations = new TreeSet<>();
+        Set<String> predicates = new TreeSet<>();
+        for(Group child : expr.children) {
+            relations.addAll(child.relations);
+            predicates.addAll(child.predicates);
+        }
+        if(expr.kind == Kind.SCAN) {
+            relations.add(expr.scan.toString());
+        }
+        if(expr.predicate != null) {
+            predicates.add(predicateKey(expr.predicate));
+        }
+        return relations + "|" + predicates;
+    }
+
+    private static String exprKey(Expr expr) {
+        String key = expr.kind.toString();
+        if(expr.scan != null) {
+            key += ":" + expr.scan;
+        }
+        if(expr.predicate != null) {
+            key += ":" + expr.predicate;
+        }
+        for(Group child : expr.children) {
+            key += "#" + child.id;
+        }
+        return key;
+    }
+
+    /*
+     * a=b and b=a are the same predicate
+     */
+    private static String predicateKey(Predicate p) {
+        if(p.equalsValue()) {
+            return p.toString();
+        }
+        String l = p.getLeftAttribute().getName();
+        String r = p.getRightAttribute().getName();
+        return l.compareTo(r) <= 0 ? l + "=" + r : r + "=" + l;
+    }
+
+    /*
+     * estimate the output relation of a new group from the first expression that reaches it;
+     * the operator built for it then stands for the group when estimating the groups above
+     */
+    private Operator repOf(Expr expr) {
+        switch(expr.kind) {
+        case SCAN:
+            return expr.scan;
+        case SELECT:
+            return shallow(new Select(expr.children.get(0).rep, expr.predicate));
+        case PROJECT:
+            return shallow(new Project(expr.children.get(0).rep, expr.attributes));
+        case PRODUCT:
+            return shallow(new Product(expr.children.get(0).rep, expr.children.get(1).rep));
+        default:
+            return shallow(new Join(expr.children.get(0).rep, expr.children.get(1).rep, expr.predicate));
+        }
+    }
+
+    /*
+     * estimate the output of an operator whose inputs already have their outputs,
+     * without visiting the whole plan below it
+     */
+    private Operator shallow(Operator op) {
+        if(op instanceof Select) {
+            estimator.visit((Select) op);
+        }else if(op instanceof Project) {
+            estimator.visit((Project) op);
+        }else if(op instanceof Product) {
+            estimator.visit((Product) op);
+        }else if(op instanceof Join) {
+            estimator.visit((Join) op);
+        }else if(op instanceof TopK) {
+            estimator.visit((TopK) op);
+        }
+        return op;
+    }
+
+    /*
+     * turn p around, if necessary, so that its left attribute comes from the given group
+     */
+    private static Predicate orient(Predicate p, Group left) {
+        if(left.output.getAttributes().contains(p.getLeftAttribute())) {
+            return p;
+        }
+        return new Predicate(p.getRightAttribute(), p.getLeftAttribute());
+    }
+
+    /*
+     * true if every attribute of p is produced by the group
+     */
+    private static boolean covers(Group group, Predicate p) {
+        List<Attribute> attrs = group.output.getAttributes();
+        return attrs.contains(p.getLeftAttribute()) &&
+                (p.equalsValue() || attrs.contains(p.getRightAttribute()));
+    }
+
+    private enum Kind { SCAN, SELECT, PROJECT, PRODUCT, JOIN }
+
+    /**
+     * A logical expression in the memo, whose inputs are groups rather than operators.
+     */
+    private static class Expr {
+        private final Kind kind;
+        private final Scan scan;
+        private final List<Attribute> attributes;
+        private final Predicate predicate;
+        private final List<Group> children;
+        // a select over a product, once rewritten into the joins and selects below it
+        private boolean rewritten = false;
+
+        private Expr(Kind kind, Scan scan, List<Attribute> attributes, Predicate predicate, Group... children) {
+            this.kind = kind;
+            this.scan = scan;
+            this.attributes = attributes;
+            this.predicate = predicate;
+            this.children = Arrays.asList(children);
+        }
+    }
+
+    /**
+     * A set of logically equivalent expressions, with the winners found for it so far.
+     */
+    private static class Group {
+        private final int id;
+        private final Operator rep;
+        private final Relation output;
+        private final Set<String> relations = new TreeSet<>();
+        private final Set<String> predicates = new TreeSet<>();
+        private final List<Expr> exprs = new ArrayList<>();
+        private final Set<String> exprKeys = new HashSet<>();
+        // cheapest plan per required order ("" for any order)
+        private final Map<String, Winner> winners = new HashMap<>();
+        // highest bound under which no plan was found, per required order
+        private final Map<String, Long> failed = new HashMap<>();
+
+        private Group(int id, Operator rep) {
+            this.id = id;
+            this.rep = rep;
+            this.output = rep.getOutput();
+        }
+    }
+
+    private static class Winner {
+        private final Operator plan;
+        private final long cost;
+
+        private Winner(Operator plan, long cost) {
+            this.plan = plan;
+            this.cost = cost;
+        }
+    }
+}
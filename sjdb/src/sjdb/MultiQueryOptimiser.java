@@ -0,0 +1,156 @@
+package sjdb;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Optimises a batch of queries together, so that a subplan that several of them
+ * compute, such as the same relation scanned and filtered with the same predicates,
+ * is computed once and its result fanned out to every query that needs it.
+ *
+ * Each query is first optimised on its own. The plans are then searched from the root
+ * down for subplans whose result (Fingerprint.ofResult()) is the same as that of a
+ * subplan of an earlier query in the batch, and such a subplan is replaced by the
+ * earlier one, so the plans of the batch form a DAG in which the shared operators
+ * appear in several plans. Searching from the root finds the largest shared subplans
+ * first. Only subplans that cost more to compute than to read back are shared, and the
+ * right input of an index nested loop join is never shared, as it is probed through
+ * the index of its relation rather than computed.
+ *
+ * A plan may also be rewritten to reuse results kept from earlier batches before it is
+ * shared; the cost of the queries on their own is measured before that rewrite.
+ *
+ * The cost of the batch counts every operator of the DAG once, plus the cost of
+ * fanning out each shared result: it is materialised as the first query reads it, and
+ * read back by each of the others, T(R) per reader.
+ */
+public class MultiQueryOptimiser {
+    private Function<Operator, Operator> optimiser;
+    private UnaryOperator<Operator> reuse;
+    // 可以共享的子计划（按结果的指纹），以及每个子计划被多少个查询使用
+    private Map<String, Operator> computed = new LinkedHashMap<>();
+    private Map<String, Integer> consumers = new HashMap<>();
+    private long independentCost = 0;
+    private long sharedCost = 0;
+
+    /**
+     * @param optimiser Optimiser applied to each query of the batch on its own
+     */
+    public MultiQueryOptimiser(Function<Operator, Operator> optimiser) {
+        this(optimiser, UnaryOperator.identity());
+    }
+
+    /**
+     * @param optimiser Optimiser applied to each query of the batch on its own
+     * @param reuse Rewrite applied to each optimised plan before it is shared, such as
+     * reading back cached results
+     */
+    public MultiQueryOptimiser(Function<Operator, Operator> optimiser, UnaryOperator<Operator> reuse) {
+        this.optimiser = optimiser;
+        this.reuse = reuse;
+    }
+
+    /**
+     * Optimise a batch of queries
+     * @param queries Canonical plans of the queries
+     * @return Optimised plans, in the same order, sharing their common subplans
+     */
+    public List<Operator> optimise(List<Operator> queries) {
+        Estimator estimator = new Estimator();
+        List<Operator> plans = new ArrayList<>();
+        computed.clear();
+        consumers.clear();
+        independentCost = 0;
+        for(Operator query : queries) {
+            Operator plan = optimiser.apply(query);
+            independentCost += estimator.estimate(plan);
+            plan = share(reuse.apply(plan));
+            plan.accept(estimator);
+            plans.add(plan);
+        }
+        sharedCost = cost(plans);
+        return plans;
+    }
+
+    /*
+     * replace the subplans computed by an earlier query with the earlier ones, and
+     * record the subplans of this query that later queries may share
+     */
+    private Operator share(Operator op) {
+        String key = Fingerprint.ofResult(op);
+        Operator earlier = key == null ? null : computed.get(key);
+        if(earlier != null) {
+            consumers.put(key, consumers.get(key) + 1);
+            return earlier;
+        }
+        for(int i=0;i<op.inputs.size();i++) {
+            if(i == 1 && op instanceof Join && ((Join) op).getMethod() == JoinMethod.INDEX_NESTED_LOOP) {
+                continue;
+            }
+            op.inputs.set(i, share(op.inputs.get(i)));
+        }
+        if(key != null && !computed.containsKey(key) &&
+                new Estimator().estimate(op) > op.getOutput().getTupleCount()) {
+            computed.put(key, op);
+            consumers.put(key, 1);
+        }
+        return op;
+    }
+
+    /*
+     * the cost of each distinct operator of the DAG, counted once, plus the fan-out of the shared results
+     */
+    private long cost(List<Operator> plans) {
+        Set<Operator> visited = Collections.newSetFromMap(new IdentityHashMap<Operator, Boolean>());
+        long total = 0;
+        for(Operator plan : plans) {
+            total += cost(plan, visited);
+        }
+        for(String key : computed.keySet()) {
+            total += (long) (consumers.get(key) - 1) * computed.get(key).getOutput().getTupleCount();
+        }
+        return total;
+    }
+
+    private long cost(Operator op, Set<Operator> visited) {
+        if(!visited.add(op)) {
+            return 0;
+        }
+        Estimator estimator = new Estimator();
+        long total = estimator.estimate(op);
+        for(Operator input : op.inputs) {
+            total -= estimator.estimate(input);
+            total += cost(input, visited);
+        }
+        return total;
+    }
+
+    /**
+     * @return the subplans computed once and used by more than one query of the last batch,
+     * with the number of queries that use each
+     */
+    public Map<Operator, Integer> getShared() {
+        Map<Operator, Integer> ret = new LinkedHashMap<>();
+        for(String key : computed.keySet()) {
+            if(consumers.get(key) > 1) {
+                ret.put(computed.get(key), consumers.get(key));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the total cost of the last batch with every query evaluated on its own
+     */
+    public long getIndependentCost() {
+        return independentCost;
+    }
+
+    /**
+     * @return the cost of the last batch with the shared subplans computed once
+     */
+    public long getSharedCost() {
+        return sharedCost;
+    }
+}
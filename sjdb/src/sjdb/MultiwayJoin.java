@@ -0,0 +1,64 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements a multiway join, which joins all of its inputs at
+ * once on a set of join predicates (attr=attr), with a worst-case optimal
+ * algorithm such as Leapfrog Triejoin: each input is sorted into a trie on
+ * its join attributes, and the join binds one class of equal join
+ * attributes at a time, intersecting the values of that class in every
+ * input that has it. It never builds the intermediate result of a pair of
+ * inputs, so for a cyclic query (a triangle, say) it does no more work
+ * than the largest possible output, whereas any plan of binary joins may
+ * build an intermediate result much larger than that.
+ */
+public class MultiwayJoin extends Operator {
+	private List<Predicate> predicates;
+
+	/**
+	 * Create a new multiway join
+	 * @param inputs Child operators
+	 * @param predicates Join predicates (attr=attr) between the inputs
+	 */
+	public MultiwayJoin(List<Operator> inputs, List<Predicate> predicates) {
+		super();
+		for (Operator input : inputs) {
+			addOperator(input);
+		}
+		this.predicates = predicates;
+	}
+
+	/**
+	 * @return the join predicates
+	 */
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/**
+	 * @return the operator name and predicates, without the inputs
+	 */
+	public String label() {
+		String ret = "MULTIWAY JOIN [";
+		String sep = "";
+		for (Predicate p : this.predicates) {
+			ret += sep + p.toString();
+			sep = ",";
+		}
+		return ret + "]";
+	}
+
+	public String toString() {
+		String ret = label() + " ";
+		for (Operator input : this.inputs) {
+			ret += "(" + input.toString() + ")";
+		}
+		return ret;
+	}
+}
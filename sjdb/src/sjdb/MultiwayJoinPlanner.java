@@ -0,0 +1,46 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Considers a worst-case optimal multiway join for a cyclic query. A plan of binary
+ * joins must join two of the relations of a cycle before the predicates that close the
+ * cycle can filter anything, and that intermediate result can be far larger than the
+ * result of the whole query; a multiway join binds the join attributes one class at a
+ * time across all the relations, and does no more work than the AGM bound on the size
+ * of its output (plus sorting its inputs into tries).
+ *
+ * The multiway join reads every relation through its cheapest access path, joins them
+ * all at once on all the join predicates, and projects the query's attributes. It
+ * replaces the binary plan chosen by the optimiser when the Estimator finds it cheaper.
+ */
+public class MultiwayJoinPlanner {
+
+    /**
+     * Return the cheaper of the binary plan and a multiway join of the whole query,
+     * if the query graph is cyclic
+     * @param graph Join graph of the query
+     * @param binary Optimised plan of binary joins
+     * @return Cheaper plan
+     */
+    public static Operator plan(QueryGraph graph, Operator binary) {
+        if(!graph.isCyclic()) {
+            return binary;
+        }
+        Estimator estimator = new Estimator();
+        int binaryCost = estimator.estimate(binary);
+        List<Operator> inputs = new ArrayList<>();
+        for(NamedRelation reln : graph.getRelations()) {
+            inputs.add(graph.leaf(reln, estimator));
+        }
+        Operator multiway = new MultiwayJoin(inputs, new ArrayList<>(graph.getJoinPredicates()));
+        if(graph.getProjection() != null) {
+            multiway = new Project(multiway, graph.getProjection());
+        }
+        if(estimator.estimate(multiway) < binaryCost) {
+            return multiway;
+        }
+        estimator.estimate(binary);
+        return binary;
+    }
+}
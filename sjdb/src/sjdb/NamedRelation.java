@@ -3,6 +3,13 @@
  */
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * This class represents a named relation which is fed into a query plan
  * @author nmg
@@ -12,6 +19,29 @@ public class NamedRelation extends Relation {
 	 * The name of the named relation
 	 */
 	private String name;
+	/**
+	 * The indexes declared on attributes of the named relation
+	 */
+	private List<Index> indexes;
+	/**
+	 * The storage formats of the attributes, chosen when first asked for;
+	 * the Estimator may ask from several optimiser threads at once
+	 */
+	private Map<Attribute, ColumnFormat> formats;
+	/**
+	 * The per-block synopses of the relation, or null if it has none
+	 */
+	private ZoneMap zoneMap;
+
+	/**
+	 * The multi-column statistics on groups of attributes of the relation
+	 */
+	private List<ColumnGroup> columnGroups;
+
+	/**
+	 * The attributes declared as keys of the relation
+	 */
+	private Set<Attribute> keys;
 	
 	/**
 	 * Create a new named relation with a given name and tuple count
@@ -21,6 +51,137 @@ public class NamedRelation extends Relation {
 	public NamedRelation(String name, int size) {
 		super(size);
 		this.name = name;
+		this.indexes = new ArrayList<Index>();
+		this.formats = new ConcurrentHashMap<Attribute, ColumnFormat>();
+		this.columnGroups = new ArrayList<ColumnGroup>();
+		this.keys = new HashSet<Attribute>();
+	}
+
+	/**
+	 * Add an index on one of the attributes of this relation
+	 * @param index The index
+	 */
+	public void addIndex(Index index) {
+		this.indexes.add(index);
+	}
+
+	/**
+	 * Return the indexes declared on this relation
+	 * @return the indexes
+	 */
+	public List<Index> getIndexes() {
+		return this.indexes;
+	}
+
+	/**
+	 * Return the index on the given attribute, or null if the attribute
+	 * is not indexed
+	 * @param attribute The attribute
+	 * @return the index on the attribute
+	 */
+	public Index getIndex(Attribute attribute) {
+		for (Index index : this.indexes) {
+			if (index.getAttribute().equals(attribute)) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Declare one of the attributes of this relation as a key: no two
+	 * tuples of the relation have the same value of it
+	 * @param attribute The attribute
+	 */
+	public void addKey(Attribute attribute) {
+		this.keys.add(attribute);
+	}
+
+	/**
+	 * Return true if the given attribute is declared as a key of this
+	 * relation; an attribute with as many values as the relation has tuples
+	 * is not a key unless it is declared
+	 * @param attribute The attribute
+	 * @return true if the attribute is a key
+	 */
+	public boolean isKey(Attribute attribute) {
+		return this.keys.contains(attribute);
+	}
+
+	/**
+	 * Set the zone map of this relation
+	 * @param zoneMap The zone map
+	 */
+	public void setZoneMap(ZoneMap zoneMap) {
+		this.zoneMap = zoneMap;
+	}
+
+	/**
+	 * Return the zone map of this relation, or null if it has none
+	 * @return the zone map
+	 */
+	public ZoneMap getZoneMap() {
+		return this.zoneMap;
+	}
+
+	/**
+	 * Add multi-column statistics on a group of attributes of this relation
+	 * @param group The column group
+	 */
+	public void addColumnGroup(ColumnGroup group) {
+		this.columnGroups.add(group);
+	}
+
+	/**
+	 * Return the multi-column statistics declared on this relation
+	 * @return the column groups
+	 */
+	public List<ColumnGroup> getColumnGroups() {
+		return this.columnGroups;
+	}
+
+	/**
+	 * Return the joint distinct count of exactly the given attributes, or
+	 * -1 if no column group of this relation records it
+	 * @param attributes The attributes
+	 * @return the joint distinct count
+	 */
+	public int getJointDistinct(List<Attribute> attributes) {
+		for (ColumnGroup group : this.columnGroups) {
+			if (group.getDistinct() >= 0 && group.getAttributes().size() == attributes.size()
+					&& group.getAttributes().containsAll(attributes)) {
+				return group.getDistinct();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the degree of the dependency from one attribute of this
+	 * relation on another, or null if no column group records it
+	 * @param from Determining attribute
+	 * @param to Dependent attribute
+	 * @return the degree of the dependency
+	 */
+	public Double getDependency(Attribute from, Attribute to) {
+		for (ColumnGroup group : this.columnGroups) {
+			Double degree = group.getDependency(from, to);
+			if (degree != null) {
+				return degree;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return the storage format of the given attribute, chosen from its
+	 * number of distinct values and the tuple count of this relation
+	 * @param attribute The attribute
+	 * @return the format of the attribute
+	 */
+	public ColumnFormat getColumnFormat(Attribute attribute) {
+		return this.formats.computeIfAbsent(attribute,
+				a -> ColumnFormat.choose(getTupleCount(), getAttribute(a).getValueCount()));
 	}
 
 	/* (non-Javadoc)
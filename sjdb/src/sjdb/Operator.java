@@ -5,7 +5,9 @@ package sjdb;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * This abstract class represents an operator in a query, and
@@ -13,7 +15,7 @@ import java.util.Iterator;
  * @author nmg
  *
  */
-public abstract class Operator {
+public abstract class Operator implements Cloneable {
 	/**
 	 * The list of child operators that feed their outputs to
 	 * this operator.
@@ -64,6 +66,40 @@ public abstract class Operator {
 		this.output = reln;
 	}
 	
+	/**
+	 * Return a copy of the plan rooted at this operator, in which every
+	 * operator is copied, so that the inputs of the copy may be replaced
+	 * without changing the original. An operator that appears more than
+	 * once in the plan is copied once.
+	 * @return Copy of the plan
+	 */
+	public Operator copy() {
+		return copy(new IdentityHashMap<Operator, Operator>());
+	}
+	
+	/**
+	 * Return the copy of this operator in the given map of copies made so
+	 * far, copying it and its inputs if there is none yet
+	 * @param copies Copies of the operators, by original
+	 * @return Copy of this operator
+	 */
+	protected Operator copy(Map<Operator, Operator> copies) {
+		Operator ret = copies.get(this);
+		if (ret == null) {
+			try {
+				ret = (Operator) super.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException(e);
+			}
+			ret.inputs = new ArrayList<Operator>();
+			for (Operator input : this.inputs) {
+				ret.inputs.add(input.copy(copies));
+			}
+			copies.put(this, ret);
+		}
+		return ret;
+	}
+	
 	/**
 	 * Accept a visitor to this operator.
 	 * @param visitor Visitor to be accepted
@@ -13,11 +13,9 @@ public class Optimiser implements PlanVisitor{
     private Set<Attribute> allAttrs = new HashSet<>();
     private Set<Predicate> allPres = new HashSet<>();
 
-    // 全排列 枚举left join的所有情况
-    private boolean[] used;
-    private Predicate[] arr;
-    private List<Predicate> tracking = new ArrayList<>();
-    private List<List<Predicate>> pmtRes = new ArrayList<List<Predicate>>();
+    // 搜索join顺序的预算，以及上一次优化是否枚举了所有join顺序
+    private Budget budget = new Budget();
+    private boolean exhaustive = true;
 
     public Optimiser(Catalogue catalogue) {
         this.catalogue = catalogue;
@@ -28,6 +26,61 @@ public class Optimiser implements PlanVisitor{
         // already has data in output
         scans.add(new Scan((NamedRelation) op.getRelation()));
     }
+    // 原始查询树中不会出现index scan
+    @Override
+    public void visit(IndexScan op) {
+        return;
+    }
+    @Override
+    public void visit(BitmapScan op) {
+        return;
+    }
+    // 运行时过滤器只在优化之后加入
+    @Override
+    public void visit(RuntimeFilter op) {
+        return;
+    }
+    @Override
+    public void visit(Exchange op) {
+        return;
+    }
+    @Override
+    public void visit(Fetch op) {
+        return;
+    }
+    // 聚合由AggregatePlanner在优化其输入之后加回
+    @Override
+    public void visit(Aggregate op) {
+        return;
+    }
+    // limit和top-k也由LimitPlanner加回
+    @Override
+    public void visit(Limit op) {
+        return;
+    }
+    @Override
+    public void visit(TopK op) {
+        return;
+    }
+    // 缓存的结果只在优化之后代入
+    @Override
+    public void visit(CachedResult op) {
+        return;
+    }
+    // 多路join只在优化之后由MultiwayJoinPlanner加入
+    @Override
+    public void visit(MultiwayJoin op) {
+        return;
+    }
+    @Override
+    public void visit(StarJoin op) {
+        return;
+    }
+    // 半连接由SemiJoinPlanner在优化外层查询之后加入
+    @Override
+    public void visit(SemiJoin op) {
+        return;
+    }
     // 把所有投射的attr都放入到allAttrs中
     @Override
     public void visit(Project op) {
@@ -60,19 +113,43 @@ public class Optimiser implements PlanVisitor{
 
 
     public Operator optimise(Operator plan) {
+        return optimise(plan, new Budget());
+    }
+
+    /**
+     * Optimise the plan, spending no more than the given budget on the join order.
+     * If the budget runs out, the cheapest plan found so far is returned and
+     * isExhaustive() returns false.
+     */
+    public Operator optimise(Operator plan, Budget budget) {
+        // limit和聚合的输入单独优化，再把它们加回去
+        if(LimitPlanner.hasLimit(plan)) {
+            return LimitPlanner.optimise(plan, p -> optimise(p, budget));
+        }
+        if(AggregatePlanner.hasAggregate(plan)) {
+            return AggregatePlanner.optimise(plan, p -> optimise(p, budget));
+        }
+        // 外层查询和每个子查询各用一个新的优化器，因为访问者会累积查询树的状态
+        if(SemiJoinPlanner.hasSemiJoin(plan)) {
+            return SemiJoinPlanner.optimise(plan, p -> new Optimiser(catalogue).optimise(p, budget));
+        }
+        this.budget = budget;
+        QueryGraph graph = new QueryGraph(plan);
         plan.accept(this);
         this.oriPlan = plan;
         List<Operator> selectRes = moveSelectionDown();
         // now all the predicates in attrPres are from different relations
         List<Operator> productRes = moveProjectDown(selectRes);
-        List<List<Predicate>> allPmt = fullPermute(this.attrPres);
         // find the best join order
-        Operator bestPlan = joinReorder(allPmt, productRes);
+        Operator bestPlan = joinReorder(productRes);
         if(this.oriPlan instanceof Project) {
             bestPlan = new Project(bestPlan, ((Project) this.oriPlan).getAttributes());
             bestPlan.accept(estimator);
         }
-        return bestPlan;
+        // 最后在join之间加入运行时过滤器（sideways information passing）
+        bestPlan = new RuntimeFilterPlanner().plan(bestPlan);
+        // 有环的查询还要和多路join比较，星型查询和星型join比较
+        return StarJoinPlanner.plan(graph, MultiwayJoinPlanner.plan(graph, bestPlan));
     }
 
     /**
@@ -87,6 +164,7 @@ public class Optimiser implements PlanVisitor{
             // scans have data in s.output
             op = s;
             List<Attribute> attrs = op.getOutput().getAttributes();
+            List<Predicate> applied = new ArrayList<>();
             Iterator<Predicate> valIt = valPres.iterator();
             Iterator<Predicate> attrIt = attrPres.iterator();
             while(valIt.hasNext()) {
@@ -99,6 +177,7 @@ public class Optimiser implements PlanVisitor{
                 // select step by step, once calculate one attribute's tuple count
                 if(attrs.contains(p.getLeftAttribute())) {
                     op = new Select(op, p);
+                    applied.add(p);
                 }
             }
             while(attrIt.hasNext()) {
@@ -112,6 +191,7 @@ public class Optimiser implements PlanVisitor{
                 // 但需要注意的是，这里可能与自连接的逻辑相违背（self join是把自己看成两张不同的表处理）
                 if(attrs.contains(p.getLeftAttribute()) && attrs.contains(p.getRightAttribute())) {
                     op = new Select(op, p);
+                    applied.add(p);
                     // remove self selection to make sure that all the predicates in attrPres are from different relations
                     attrIt.remove();
                 }
@@ -119,6 +199,10 @@ public class Optimiser implements PlanVisitor{
             if(op.getOutput()==null) {
                 op.accept(estimator);
             }
+            // 如果某个attr=val的属性上有索引，并且index scan比scan+select便宜，就用index scan读取这个relation
+            if(!applied.isEmpty()) {
+                op = QueryGraph.accessPath((NamedRelation) s.getRelation(), applied, estimator);
+            }
             res.add(op);
         }
         return res;
@@ -160,123 +244,176 @@ public class Optimiser implements PlanVisitor{
         return res;
     }
 
-    private Operator joinReorder(List<List<Predicate>> presList, List<Operator> productRes) {
-        Operator bestOperator = null;
-        int lowestCost = Integer.MAX_VALUE;
+    /**
+     * 按预算枚举left-deep join顺序：先用贪心得到一个较好的顺序，然后以它为起点按字典序枚举全排列，
+     * 越靠前的排列和贪心顺序越接近。预算用完时返回目前为止开销最小的计划，并把exhaustive置为false。
+     * @return the cheapest left-deep plan found within the budget
+     */
+    private Operator joinReorder(List<Operator> productRes) {
+        long start = System.currentTimeMillis();
+        int plansCosted = 0;
+        this.exhaustive = true;
         // no join
         if(productRes.size()==1) {
-            bestOperator = productRes.get(0);
+            Operator bestOperator = productRes.get(0);
             bestOperator.accept(estimator);
             return bestOperator;
         }
 
-        for(List<Predicate> list : presList) {
-            Predicate predicate = list.get(0);
-            Attribute leftAttr = predicate.getLeftAttribute();
-            Attribute rightAttr = predicate.getRightAttribute();
-            Operator leftOp = null;
-            Operator rightOp = null;
-            boolean f1 = false;
-            boolean f2 = false;
-            List<Operator> copyList = new ArrayList<>();
-            copyList.addAll(productRes);
-            Iterator<Operator> it = copyList.iterator();
-            while(it.hasNext()) {
-                if(f1&&f2) {
-                    break;
-                }
-                Operator o = it.next();
-                if(!f1 && o.getOutput().getAttributes().contains(leftAttr)) {
-                    leftOp = o;
-                    it.remove();
-                    f1 = true;
-                    continue;
-                }
-                if(!f2 && o.getOutput().getAttributes().contains(rightAttr)) {
-                    rightOp = o;
-                    it.remove();
-                    f2 = true;
-                }
+        List<Predicate> greedy = greedyOrder(productRes);
+        int[] perm = new int[greedy.size()];
+        for(int i=0;i<perm.length;i++) {
+            perm[i] = i;
+        }
+        Operator bestOperator = null;
+        int lowestCost = Integer.MAX_VALUE;
+        do {
+            // always cost the greedy order, however small the budget
+            if(bestOperator != null && budget.isExhausted(start, plansCosted)) {
+                this.exhaustive = false;
+                break;
             }
+            List<Predicate> order = new ArrayList<>();
+            for(int i : perm) {
+                order.add(greedy.get(i));
+            }
+            Operator plan = buildLeftDeep(order, productRes);
+            int cost = estimator.estimate(plan);
+            plansCosted++;
+            // 开销饱和时都等于Integer.MAX_VALUE，第一个方案也要保留
+            if(bestOperator == null || cost < lowestCost) {
+                lowestCost = cost;
+                bestOperator = plan;
+            }
+        } while(nextPermutation(perm));
+        return bestOperator;
+    }
 
-            Operator join1 = new Join(leftOp, rightOp, predicate);
-            join1.accept(estimator);
-
-            list.remove(0);
-            // only 1 join
-            if(list.isEmpty()) {
-                bestOperator = join1;
-                return bestOperator;
+    /**
+     * 贪心：每一步选择让中间结果tuple数量最小的join predicate
+     */
+    private List<Predicate> greedyOrder(List<Operator> productRes) {
+        List<Predicate> order = new ArrayList<>();
+        List<Predicate> remaining = new ArrayList<>(this.attrPres);
+        while(!remaining.isEmpty()) {
+            Predicate bestPredicate = null;
+            int smallestOutput = Integer.MAX_VALUE;
+            for(Predicate p : remaining) {
+                order.add(p);
+                int output = buildLeftDeep(order, productRes).getOutput().getTupleCount();
+                order.remove(order.size()-1);
+                if(bestPredicate == null || output < smallestOutput) {
+                    smallestOutput = output;
+                    bestPredicate = p;
+                }
             }
+            order.add(bestPredicate);
+            remaining.remove(bestPredicate);
+        }
+        return order;
+    }
 
-            // more than 1 join
-            Operator lastJoin = join1;
-            Iterator<Predicate> preIt = list.iterator();
+    /**
+     * Build a left-deep join tree that applies the join predicates in the given order. A predicate
+     * that does not yet touch the tree is deferred until one that does has been applied, so that
+     * every order of a connected query yields a complete plan.
+     */
+    private Operator buildLeftDeep(List<Predicate> order, List<Operator> productRes) {
+        List<Predicate> pending = new ArrayList<>(order);
+        List<Operator> copyList = new ArrayList<>(productRes);
+        Operator lastJoin = null;
+        boolean progress = true;
+        while(!pending.isEmpty() && progress) {
+            progress = false;
+            Iterator<Predicate> preIt = pending.iterator();
             while(preIt.hasNext()) {
                 Predicate p = preIt.next();
                 Attribute l = p.getLeftAttribute();
                 Attribute r = p.getRightAttribute();
-                if(lastJoin.getOutput().getAttributes().contains(l)) {
-                    Iterator<Operator> copyIt = copyList.iterator();
-                    while(copyIt.hasNext()) {
-                        Operator op = copyIt.next();
-                        if(op.getOutput().getAttributes().contains(r)) {
-                            lastJoin = new Join(lastJoin, op, p);
-                            lastJoin.accept(estimator);
-                            copyIt.remove();
-                            break;
-                        }
-                    }
-                }else if(lastJoin.getOutput().getAttributes().contains(r)) {
-                    Iterator<Operator> copyIt = copyList.iterator();
-                    while(copyIt.hasNext()) {
-                        Operator op = copyIt.next();
+                Operator leftOp = null;
+                Operator rightOp = null;
+                if(lastJoin != null && lastJoin.getOutput().getAttributes().contains(l)
+                        && lastJoin.getOutput().getAttributes().contains(r)) {
+                    // 有环的查询：两边都已经在树里了，用select应用这个谓词
+                    lastJoin = new Select(lastJoin, p);
+                    lastJoin.accept(estimator);
+                    preIt.remove();
+                    progress = true;
+                    break;
+                }
+                if(lastJoin == null) {
+                    // first join: both sides come from the relations
+                    for(Operator op : copyList) {
                         if(op.getOutput().getAttributes().contains(l)) {
-                            lastJoin = new Join(lastJoin, op, p);
-                            lastJoin.accept(estimator);
-                            copyIt.remove();
-                            break;
+                            leftOp = op;
+                        }else if(op.getOutput().getAttributes().contains(r)) {
+                            rightOp = op;
                         }
                     }
+                }else if(lastJoin.getOutput().getAttributes().contains(l)) {
+                    leftOp = lastJoin;
+                    rightOp = findRelation(copyList, r);
+                }else if(lastJoin.getOutput().getAttributes().contains(r)) {
+                    // keep the predicate's left attribute on the left input
+                    p = new Predicate(r, l);
+                    leftOp = lastJoin;
+                    rightOp = findRelation(copyList, l);
                 }
-            }
-            int cost = estimator.estimate(lastJoin);
-            if(cost < lowestCost) {
-                lowestCost = cost;
-                bestOperator = lastJoin;
+                if(leftOp == null || rightOp == null) {
+                    continue;
+                }
+                copyList.remove(leftOp);
+                copyList.remove(rightOp);
+                lastJoin = new Join(leftOp, rightOp, p);
+                lastJoin.accept(estimator);
+                preIt.remove();
+                progress = true;
+                break;
             }
         }
-        return bestOperator;
+        return lastJoin;
     }
 
-    private List<List<Predicate>> fullPermute(Set<Predicate> pres) {
-        this.arr = new Predicate[pres.size()];
-        Iterator<Predicate> it = pres.iterator();
-        int i=0;
-        while(it.hasNext()) {
-            Predicate p = it.next();
-            this.arr[i] = p;
-            i++;
+    private Operator findRelation(List<Operator> ops, Attribute attr) {
+        for(Operator op : ops) {
+            if(op.getOutput().getAttributes().contains(attr)) {
+                return op;
+            }
         }
-        this.used = new boolean[pres.size()];
-        backTrack();
-        return pmtRes;
+        return null;
     }
 
-    private void backTrack() {
-        if(tracking.size()== arr.length) {
-            pmtRes.add(new ArrayList<>(tracking));
+    /**
+     * 按字典序生成下一个排列，已经是最后一个排列时返回false
+     */
+    private static boolean nextPermutation(int[] perm) {
+        int i = perm.length - 2;
+        while(i >= 0 && perm[i] >= perm[i+1]) {
+            i--;
         }
-        for(int i=0;i< arr.length;i++) {
-            if(used[i]) {
-                continue;
-            }
-            used[i] = true;
-            tracking.add(arr[i]);
-            backTrack();
-            tracking.remove(tracking.size()-1);
-            used[i] = false;
+        if(i < 0) {
+            return false;
         }
-        return;
+        int j = perm.length - 1;
+        while(perm[j] <= perm[i]) {
+            j--;
+        }
+        int tmp = perm[i];
+        perm[i] = perm[j];
+        perm[j] = tmp;
+        for(int a=i+1, b=perm.length-1; a<b; a++, b--) {
+            tmp = perm[a];
+            perm[a] = perm[b];
+            perm[b] = tmp;
+        }
+        return true;
+    }
+
+    /**
+     * Return true if the last call to optimise() costed every join order, and false if
+     * its budget ran out first and the plan returned is only the best found so far.
+     */
+    public boolean isExhaustive() {
+        return this.exhaustive;
     }
 }
@@ -15,6 +15,18 @@ public class OtherOptimiser implements PlanVisitor {
     }
 
     public void visit(Scan op) { allScans.add(new Scan((NamedRelation)op.getRelation())); }
+    public void visit(IndexScan op) {}
+    public void visit(BitmapScan op) {}
+    public void visit(RuntimeFilter op) {}
+    public void visit(Exchange op) {}
+    public void visit(Fetch op) {}
+    public void visit(Aggregate op) {}
+    public void visit(Limit op) {}
+    public void visit(TopK op) {}
+    public void visit(CachedResult op) {}
+    public void visit(MultiwayJoin op) {}
+    public void visit(StarJoin op) {}
+    public void visit(SemiJoin op) {}
     public void visit(Project op) { allAttributes.addAll(op.getAttributes()); }
     public void visit(Product op) {}
     public void visit(Join op) {}
@@ -26,6 +38,16 @@ public class OtherOptimiser implements PlanVisitor {
     }
 
     public Operator optimise(Operator plan) {
+        if(LimitPlanner.hasLimit(plan)) {
+            return LimitPlanner.optimise(plan, this::optimise);
+        }
+        if(AggregatePlanner.hasAggregate(plan)) {
+            return AggregatePlanner.optimise(plan, this::optimise);
+        }
+        // the visitor collects the whole plan, so each query gets an optimiser of its own
+        if(SemiJoinPlanner.hasSemiJoin(plan)) {
+            return SemiJoinPlanner.optimise(plan, p -> new OtherOptimiser(cat).optimise(p));
+        }
         plan.accept(this);
         //move down the selections and projections
         List<Operator> operation = SelectProjectDown(allScans, allAttributes, allPredicates, plan);
@@ -117,8 +139,8 @@ public class OtherOptimiser implements PlanVisitor {
             Integer i = est.estimate(aPlan);
             //System.out.println("Found plan with cost: " + i);
 
-            // make the cheapest plan
-            if(i < CheapestCost) {
+            // make the cheapest plan; a saturated cost equals the starting value, so keep the first plan
+            if(CheapestPlan == null || i < CheapestCost) {
                 CheapestPlan = aPlan;
                 CheapestCost = i;
             }
@@ -163,25 +185,29 @@ public class OtherOptimiser implements PlanVisitor {
             while(oIt.hasNext()) {
                 Operator curOp = oIt.next();
                 //find the operator with attributes in output relation
-                if(curOp.getOutput().getAttributes().contains(currentPred.getLeftAttribute())) {
+                boolean hasLeft = curOp.getOutput().getAttributes().contains(currentPred.getLeftAttribute());
+                boolean hasRight = curOp.getOutput().getAttributes().contains(currentPred.getRightAttribute());
+                // an operator that already joined both sides (a composite join key) is only removed once
+                if(hasLeft || hasRight) {
                     oIt.remove();
+                }
+                if(hasLeft) {
                     left = curOp;
                 }
-                if(curOp.getOutput().getAttributes().contains(currentPred.getRightAttribute())) {
-                    oIt.remove();
+                if(hasRight) {
                     right = curOp;
                 }
 
             }
 
             // Select --> 1 Operator
-            if((left == null && right != null) || (right == null && left != null)){
+            if((left == null && right != null) || (right == null && left != null) || (left != null && left == right)){
                 result = new Select(left != null? left : right, currentPred);
                 it.remove();
             }
 
             // Join --> 2 Operators
-            if(left != null && right != null){
+            if(left != null && right != null && left != right){
                 result = new Join(left, right, currentPred);
                 it.remove();
             }
@@ -0,0 +1,166 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Chooses the degree of parallelism of an optimised plan and inserts the Exchange
+ * operators needed to evaluate it with that many workers, morsel-driven: the scans
+ * are split into morsels of MORSEL_SIZE tuples that are handed out to the workers,
+ * and a gather at the root collects the result.
+ *
+ * Hash joins (and logical joins, which are evaluated as hash joins) build one hash
+ * table shared by all the workers and probe it in parallel, so they need no exchange;
+ * index nested loop joins probe the index from every worker, a star join shares the
+ * hash tables of its dimensions the same way, and a multiway join
+ * shares its tries between the workers, which split up the values of the first class
+ * of join attributes. A merge join needs both
+ * inputs repartitioned on the join attributes, and a nested loop join or product
+ * needs its right input broadcast to every worker.
+ *
+ * Aggregates are evaluated as partitioned hash aggregations: the input of a grouped
+ * aggregate is repartitioned on its first group-by attribute, so that each worker
+ * builds the hash table of its own share of the groups, while a partial aggregate
+ * below a join needs no exchange, since its groups are combined by the final aggregate
+ * above the join. An aggregate without group-by attributes is evaluated after the gather,
+ * as are a limit and a top-k at the root of the plan.
+ *
+ * The degree is chosen from the Estimator's cardinalities: a plan gets no more workers
+ * than its largest scan has morsels, and each extra worker must pay for its share of
+ * the tuples moved by the exchanges and for a fixed coordination overhead, so small
+ * queries stay serial.
+ */
+public class ParallelPlanner {
+    // 每个morsel包含的tuple数量
+    private static final int MORSEL_SIZE = 10000;
+    // 每多一个worker的协调开销，以tuple数量衡量
+    private static final int WORKER_COST = 1000;
+    private int workers;
+    private int degree = 1;
+
+    /**
+     * @param workers Number of workers available to the query
+     */
+    public ParallelPlanner(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * @return the degree of parallelism chosen for the last plan
+     */
+    public int getDegree() {
+        return degree;
+    }
+
+    public Operator plan(Operator plan) {
+        Estimator estimator = new Estimator();
+        int serial = estimator.estimate(plan);
+        int morsels = (int) Math.ceil((double) largestScan(plan) / MORSEL_SIZE);
+        int maxDegree = Math.min(workers, morsels);
+
+        // elapsed time is the work shared out between the workers, plus the coordination overhead
+        degree = 1;
+        double bestTime = serial;
+        for(int d=2;d<=maxDegree;d++) {
+            List<Placement> placed = new ArrayList<>();
+            Operator root = place(plan, d, placed);
+            double time = (double) estimator.estimate(root) / d + (long) WORKER_COST * (d - 1);
+            undo(placed);
+            if(time < bestTime) {
+                bestTime = time;
+                degree = d;
+            }
+        }
+        if(degree == 1) {
+            estimator.estimate(plan);
+            return plan;
+        }
+        Operator root = place(plan, degree, new ArrayList<Placement>());
+        estimator.estimate(root);
+        return root;
+    }
+
+    /*
+     * the largest number of tuples read by a scan of the plan; the right input of an
+     * index nested loop join is only probed, never scanned
+     */
+    private int largestScan(Operator op) {
+        if(op instanceof Scan || op instanceof IndexScan || op instanceof BitmapScan || op instanceof CachedResult) {
+            return op.getOutput().getTupleCount();
+        }
+        if(op instanceof Join && ((Join) op).getMethod() == JoinMethod.INDEX_NESTED_LOOP) {
+            return largestScan(((Join) op).getLeft());
+        }
+        int largest = 0;
+        for(Operator input : op.inputs) {
+            largest = Math.max(largest, largestScan(input));
+        }
+        return largest;
+    }
+
+    /*
+     * insert the exchanges for the given degree below each join that needs them, and a
+     * gather above the root; the inserted exchanges are recorded so they can be taken out
+     */
+    private Operator place(Operator plan, int degree, List<Placement> placed) {
+        placeJoins(plan, degree, placed);
+        // 全局聚合、limit和top-k都在gather之后进行
+        Operator top = plan instanceof Project ? ((Project) plan).getInput() : plan;
+        if(plan instanceof Limit || plan instanceof TopK) {
+            top = plan;
+        }
+        if(top instanceof Limit || top instanceof TopK ||
+                (top instanceof Aggregate && ((Aggregate) top).getGroupBy().isEmpty())) {
+            insert(top, 0, new Exchange(((UnaryOperator) top).getInput(), ExchangeType.GATHER, degree), placed);
+            return plan;
+        }
+        return new Exchange(plan, ExchangeType.GATHER, degree);
+    }
+
+    private void placeJoins(Operator op, int degree, List<Placement> placed) {
+        for(Operator input : op.inputs) {
+            placeJoins(input, degree, placed);
+        }
+        if(op instanceof Join) {
+            Join join = (Join) op;
+            if(join.getMethod() == JoinMethod.MERGE) {
+                Predicate p = join.getPredicate();
+                insert(op, 0, new Exchange(join.getLeft(), ExchangeType.REPARTITION, p.getLeftAttribute(), degree), placed);
+                insert(op, 1, new Exchange(join.getRight(), ExchangeType.REPARTITION, p.getRightAttribute(), degree), placed);
+            }else if(join.getMethod() == JoinMethod.NESTED_LOOP) {
+                insert(op, 1, new Exchange(join.getRight(), ExchangeType.BROADCAST, degree), placed);
+            }
+        }else if(op instanceof Product) {
+            insert(op, 1, new Exchange(((Product) op).getRight(), ExchangeType.BROADCAST, degree), placed);
+        }else if(op instanceof Aggregate) {
+            // 按第一个分组属性重新分区，每个worker只聚合自己的分组
+            Aggregate aggregate = (Aggregate) op;
+            if(!aggregate.isPartial() && !aggregate.getGroupBy().isEmpty()) {
+                insert(op, 0, new Exchange(aggregate.getInput(), ExchangeType.REPARTITION, aggregate.getGroupBy().get(0), degree), placed);
+            }
+        }
+    }
+
+    private void insert(Operator parent, int index, Exchange exchange, List<Placement> placed) {
+        placed.add(new Placement(parent, index, parent.inputs.get(index)));
+        parent.inputs.set(index, exchange);
+    }
+
+    private void undo(List<Placement> placed) {
+        for(int i=placed.size()-1;i>=0;i--) {
+            Placement p = placed.get(i);
+            p.parent.inputs.set(p.index, p.original);
+        }
+    }
+
+    private static class Placement {
+        private final Operator parent;
+        private final int index;
+        private final Operator original;
+
+        private Placement(Operator parent, int index, Operator original) {
+            this.parent = parent;
+            this.index = index;
+            this.original = original;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents a pipeline of a query plan, for push-based
+ * evaluation: a source produces tuples, and each tuple is pushed through
+ * the fused operators of the pipeline in one loop, without being
+ * materialised between them, until it reaches the sink that ends the
+ * pipeline.
+ */
+public class Pipeline {
+	private Operator source;
+	private List<Operator> operators;
+	private Operator sinkOperator;
+	private PipelineSink sink;
+
+	/**
+	 * Create a new pipeline that starts at the given source
+	 * @param source Operator that produces the tuples: a scan, or a
+	 * breaker whose tuples were collected by earlier pipelines
+	 */
+	public Pipeline(Operator source) {
+		this.source = source;
+		this.operators = new ArrayList<Operator>();
+	}
+
+	/**
+	 * Fuse an operator into the pipeline, after the operators already in it
+	 * @param op Operator that consumes each tuple as it is pushed
+	 */
+	public void add(Operator op) {
+		this.operators.add(op);
+	}
+
+	/**
+	 * End the pipeline
+	 * @param op Operator whose input the pipeline feeds, or null for the
+	 * result of the query
+	 * @param sink Kind of pipeline breaker
+	 */
+	public void end(Operator op, PipelineSink sink) {
+		this.sinkOperator = op;
+		this.sink = sink;
+	}
+
+	/**
+	 * @return the operator that produces the tuples of the pipeline
+	 */
+	public Operator getSource() {
+		return this.source;
+	}
+
+	/**
+	 * @return the operators fused into the pipeline, in the order in which
+	 * tuples pass through them
+	 */
+	public List<Operator> getOperators() {
+		return this.operators;
+	}
+
+	/**
+	 * @return the operator whose input the pipeline feeds, or null
+	 */
+	public Operator getSinkOperator() {
+		return this.sinkOperator;
+	}
+
+	/**
+	 * @return the pipeline breaker that ends the pipeline
+	 */
+	public PipelineSink getSink() {
+		return this.sink;
+	}
+
+	public String toString() {
+		String ret = label(this.source);
+		for (Operator op : this.operators) {
+			ret += " -> " + label(op);
+		}
+		return ret + " => " + this.sink;
+	}
+
+	/*
+	 * a description of one operator, without its inputs
+	 */
+	private static String label(Operator op) {
+		if (op instanceof Scan) {
+			return "SCAN " + ((Scan) op).getRelation();
+		} else if (op instanceof IndexScan || op instanceof BitmapScan) {
+			String s = op.toString();
+			return s.substring(0, s.lastIndexOf(" ("));
+		} else if (op instanceof Select) {
+			return "SELECT [" + ((Select) op).getPredicate() + "]";
+		} else if (op instanceof Project) {
+			String s = op.toString();
+			return s.substring(0, s.indexOf("] (") + 1);
+		} else if (op instanceof RuntimeFilter) {
+			RuntimeFilter f = (RuntimeFilter) op;
+			return "FILTER " + f.getType() + " [" + f.getProbeAttribute().getName() + " IN " +
+					f.getBuildAttribute().getName() + "]";
+		} else if (op instanceof Join) {
+			Join j = (Join) op;
+			return (j.getMethod() == null ? "" : j.getMethod() + " ") + "JOIN [" + j.getPredicate() + "]";
+		} else if (op instanceof Fetch) {
+			String s = op.toString();
+			return s.substring(0, s.indexOf("] (") + 1);
+		} else if (op instanceof Aggregate) {
+			return ((Aggregate) op).label();
+		} else if (op instanceof SemiJoin) {
+			return ((SemiJoin) op).label();
+		} else if (op instanceof StarJoin) {
+			return ((StarJoin) op).label();
+		} else if (op instanceof MultiwayJoin) {
+			return ((MultiwayJoin) op).label();
+		} else if (op instanceof CachedResult) {
+			return op.toString();
+		} else if (op instanceof Limit) {
+			return ((Limit) op).label();
+		} else if (op instanceof TopK) {
+			return ((TopK) op).label();
+		} else if (op instanceof Exchange) {
+			Exchange e = (Exchange) op;
+			return e.getType() + (e.getAttribute() == null ? "" : " [" + e.getAttribute().getName() + "]") +
+					" x" + e.getDegree();
+		}
+		return "TIMES";
+	}
+}
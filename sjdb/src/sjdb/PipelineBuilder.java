@@ -0,0 +1,167 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Breaks a physical query plan into pipelines at its pipeline breakers,
+ * for push-based evaluation in which each pipeline runs as one loop over
+ * the tuples of its source, with the operators of the pipeline fused into
+ * that loop.
+ *
+ * Scans (and reads of cached results) start pipelines; selects, projects and runtime filters are fused
+ * into the pipeline of their input. A hash join (or a logical join, which
+ * is evaluated as one) ends the pipeline of its left input in the build
+ * of its hash table, and the pipeline of its right input carries on
+ * through the probe. A nested loop join or product materialises its
+ * right input and streams its left input. An index nested loop join
+ * streams its left input; its right input is never run, as the tuples
+ * are fetched through the index. A merge join ends both its inputs in a
+ * sort (or, if an input is already in order, in a materialisation) and
+ * starts a new pipeline, as do an exchange, a hash aggregate and a top-k.
+ * A multiway join sorts each of its inputs into a trie, and starts a new
+ * pipeline. A star join ends the pipeline of each dimension in the build
+ * of its hash table, and the pipeline of the fact input carries on
+ * through the probes of all of them. A semi-join or anti-join ends its
+ * right input in a hash build, and its left input streams through the probe.
+ *
+ * A limit is fused into the pipeline of its input, and stops the whole
+ * pipeline (its source included) once it has passed on enough tuples.
+ *
+ * The pipelines are listed in an order in which they can be run: every
+ * pipeline comes after the pipelines whose sinks it reads from.
+ */
+public class PipelineBuilder implements PlanVisitor {
+	private Estimator estimator = new Estimator();
+	private Deque<Pipeline> open = new ArrayDeque<Pipeline>();
+	private List<Pipeline> pipelines = new ArrayList<Pipeline>();
+
+	/**
+	 * Break the given plan into pipelines
+	 * @param plan Physical query plan
+	 * @return Pipelines of the plan, in an order in which they can be run
+	 */
+	public List<Pipeline> build(Operator plan) {
+		this.open.clear();
+		this.pipelines = new ArrayList<Pipeline>();
+		plan.accept(this);
+		finish(this.open.pop(), null, PipelineSink.RESULT);
+		return this.pipelines;
+	}
+
+	private void finish(Pipeline pipeline, Operator op, PipelineSink sink) {
+		pipeline.end(op, sink);
+		this.pipelines.add(pipeline);
+	}
+
+	public void visit(Scan op) {
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(IndexScan op) {
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(BitmapScan op) {
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(CachedResult op) {
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(Project op) {
+		this.open.peek().add(op);
+	}
+
+	public void visit(Select op) {
+		this.open.peek().add(op);
+	}
+
+	public void visit(RuntimeFilter op) {
+		this.open.peek().add(op);
+	}
+
+	public void visit(Fetch op) {
+		this.open.peek().add(op);
+	}
+
+	public void visit(Aggregate op) {
+		finish(this.open.pop(), op, PipelineSink.HASH_AGGREGATE);
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(Limit op) {
+		this.open.peek().add(op);
+	}
+
+	public void visit(TopK op) {
+		// without a count, the top-k is a full sort of its input
+		finish(this.open.pop(), op, op.getCount() == Integer.MAX_VALUE ? PipelineSink.SORT : PipelineSink.TOP_K);
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(Exchange op) {
+		finish(this.open.pop(), op, PipelineSink.EXCHANGE);
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(Product op) {
+		Pipeline right = this.open.pop();
+		finish(right, op, PipelineSink.MATERIALISE);
+		this.open.peek().add(op);
+	}
+
+	public void visit(MultiwayJoin op) {
+		// each input is sorted into a trie before the join starts
+		List<Operator> inputs = op.getInputs();
+		for (int i = inputs.size() - 1; i >= 0; i--) {
+			finish(this.open.pop(), op, PipelineSink.SORT);
+		}
+		this.open.push(new Pipeline(op));
+	}
+
+	public void visit(StarJoin op) {
+		// a hash table is built on each dimension, and the fact pipeline probes them all
+		Pipeline fact = this.open.pop();
+		for (int i = op.getDimensions().size() - 1; i >= 0; i--) {
+			finish(this.open.pop(), op, PipelineSink.HASH_BUILD);
+		}
+		fact.add(op);
+		this.open.push(fact);
+	}
+
+	public void visit(SemiJoin op) {
+		// the right input is built into a hash table, and the left input probes it
+		finish(this.open.pop(), op, PipelineSink.HASH_BUILD);
+		this.open.peek().add(op);
+	}
+
+	public void visit(Join op) {
+		Pipeline right = this.open.pop();
+		Pipeline left = this.open.pop();
+		JoinMethod method = op.getMethod();
+		if (method == JoinMethod.INDEX_NESTED_LOOP) {
+			// the right input is evaluated on the tuples fetched through the index
+			left.add(op);
+			this.open.push(left);
+		} else if (method == JoinMethod.NESTED_LOOP) {
+			finish(right, op, PipelineSink.MATERIALISE);
+			left.add(op);
+			this.open.push(left);
+		} else if (method == JoinMethod.MERGE) {
+			Predicate p = op.getPredicate();
+			finish(left, op, this.estimator.isSortedOn(op.getLeft(), p.getLeftAttribute()) ?
+					PipelineSink.MATERIALISE : PipelineSink.SORT);
+			finish(right, op, this.estimator.isSortedOn(op.getRight(), p.getRightAttribute()) ?
+					PipelineSink.MATERIALISE : PipelineSink.SORT);
+			this.open.push(new Pipeline(op));
+		} else {
+			finish(left, op, PipelineSink.HASH_BUILD);
+			right.add(op);
+			this.open.push(right);
+		}
+	}
+}
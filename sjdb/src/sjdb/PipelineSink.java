@@ -0,0 +1,38 @@
+package sjdb;
+
+/**
+ * The pipeline breakers at which a pipeline ends: the points in a plan
+ * where every tuple of an input must be consumed before any tuple is
+ * produced above it.
+ */
+public enum PipelineSink {
+	/**
+	 * Insert the tuples into the hash table of a hash join.
+	 */
+	HASH_BUILD,
+	/**
+	 * Sort the tuples for a merge join.
+	 */
+	SORT,
+	/**
+	 * Store the tuples of the inner input of a nested loop join or a
+	 * product, which is read once per outer tuple.
+	 */
+	MATERIALISE,
+	/**
+	 * Insert the tuples into the hash table of an aggregate.
+	 */
+	HASH_AGGREGATE,
+	/**
+	 * Insert the tuples into the heap of a top-k.
+	 */
+	TOP_K,
+	/**
+	 * Hand the tuples to an exchange, to be moved between workers.
+	 */
+	EXCHANGE,
+	/**
+	 * Return the tuples as the result of the query.
+	 */
+	RESULT
+}
@@ -0,0 +1,86 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * A cache of optimised plans, keyed by the fingerprint of the canonical plan
+ * of a query, so that a repeated query skips optimisation and is given the plan
+ * chosen for it before. The least recently used plan is evicted when the cache
+ * is full.
+ *
+ * The plans were chosen with the statistics in the catalogue at the time, so
+ * the plans that read a relation should be invalidated when its statistics or
+ * indexes change. Plans are copied into and out of the cache, so the queries
+ * that use a cached plan may each change their own copy.
+ */
+public class PlanCache {
+    private final int capacity;
+    private final LinkedHashMap<String, CachedPlan> plans;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param capacity Maximum number of plans held
+     */
+    public PlanCache(int capacity) {
+        this.capacity = capacity;
+        // access order, so that the eldest entry is the least recently used
+        this.plans = new LinkedHashMap<String, CachedPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+                return size() > PlanCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the optimised plan cached for the given canonical plan, or null
+     */
+    public Operator get(Operator canonical) {
+        CachedPlan entry = plans.get(Fingerprint.of(canonical));
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.plan.copy();
+    }
+
+    /**
+     * Cache the optimised plan of the given canonical plan
+     */
+    public void put(Operator canonical, Operator optimised) {
+        Fingerprint fingerprint = new Fingerprint(canonical);
+        plans.put(fingerprint.toString(), new CachedPlan(optimised.copy(), fingerprint.getRelations()));
+    }
+
+    /**
+     * Remove every cached plan that reads the named relation
+     */
+    public void invalidate(String relation) {
+        Iterator<CachedPlan> iter = plans.values().iterator();
+        while(iter.hasNext()) {
+            if(iter.next().relations.contains(relation)) {
+                iter.remove();
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    private static class CachedPlan {
+        private final Operator plan;
+        private final Set<String> relations;
+
+        private CachedPlan(Operator plan, Set<String> relations) {
+            this.plan = plan;
+            this.relations = relations;
+        }
+    }
+}
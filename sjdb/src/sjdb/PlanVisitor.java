@@ -11,6 +11,16 @@ public interface PlanVisitor {
 	 * @param op Scan operator to be visited
 	 */
 	public void visit(Scan op);
+	/**
+	 * Visit an IndexScan operator.
+	 * @param op IndexScan operator to be visited
+	 */
+	public void visit(IndexScan op);
+	/**
+	 * Visit a BitmapScan operator.
+	 * @param op BitmapScan operator to be visited
+	 */
+	public void visit(BitmapScan op);
 	/**
 	 * Visit a Project operator.
 	 * @param op Project operator to be visited
@@ -21,6 +31,56 @@ public interface PlanVisitor {
 	 * @param op Select operator to be visited
 	 */
 	public void visit(Select op);
+	/**
+	 * Visit a RuntimeFilter operator.
+	 * @param op RuntimeFilter operator to be visited
+	 */
+	public void visit(RuntimeFilter op);
+	/**
+	 * Visit an Exchange operator.
+	 * @param op Exchange operator to be visited
+	 */
+	public void visit(Exchange op);
+	/**
+	 * Visit a Fetch operator.
+	 * @param op Fetch operator to be visited
+	 */
+	public void visit(Fetch op);
+	/**
+	 * Visit an Aggregate operator.
+	 * @param op Aggregate operator to be visited
+	 */
+	public void visit(Aggregate op);
+	/**
+	 * Visit a Limit operator.
+	 * @param op Limit operator to be visited
+	 */
+	public void visit(Limit op);
+	/**
+	 * Visit a TopK operator.
+	 * @param op TopK operator to be visited
+	 */
+	public void visit(TopK op);
+	/**
+	 * Visit a CachedResult operator.
+	 * @param op CachedResult operator to be visited
+	 */
+	public void visit(CachedResult op);
+	/**
+	 * Visit a MultiwayJoin operator.
+	 * @param op MultiwayJoin operator to be visited
+	 */
+	public void visit(MultiwayJoin op);
+	/**
+	 * Visit a StarJoin operator.
+	 * @param op StarJoin operator to be visited
+	 */
+	public void visit(StarJoin op);
+	/**
+	 * Visit a SemiJoin operator.
+	 * @param op SemiJoin operator to be visited
+	 */
+	public void visit(SemiJoin op);
 	/**
 	 * Visit a Product operator.
 	 * @param op Product operator to be visited
@@ -0,0 +1,323 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * The join graph of a canonical query plan: the named relations that it
+ * scans, the predicates that apply to a single relation, the join
+ * predicates that relate two relations, and the attributes projected at
+ * the root of the plan (if any).
+ *
+ * Each call to leaf() builds a fresh access plan for a relation, with its
+ * own predicates pushed down onto the scan, so that plans built from the
+ * graph never share operators.
+ */
+public class QueryGraph implements PlanVisitor {
+	private List<NamedRelation> relations = new ArrayList<NamedRelation>();
+	private List<Predicate> predicates = new ArrayList<Predicate>();
+	private List<Predicate> joinPredicates = new ArrayList<Predicate>();
+	private List<Attribute> projection = null;
+
+	/**
+	 * Build the join graph of the given canonical plan
+	 * @param plan Canonical query plan
+	 */
+	public QueryGraph(Operator plan) {
+		plan.accept(this);
+		if (plan instanceof Project) {
+			this.projection = ((Project) plan).getAttributes();
+		}
+		// attr=attr predicates over one relation are applied by its leaf
+		Iterator<Predicate> iter = this.predicates.iterator();
+		while (iter.hasNext()) {
+			Predicate p = iter.next();
+			if (!p.equalsValue() && relationOf(p.getLeftAttribute()) != relationOf(p.getRightAttribute())) {
+				this.joinPredicates.add(p);
+				iter.remove();
+			}
+		}
+	}
+
+	public void visit(Scan op) {
+		this.relations.add((NamedRelation) op.getRelation());
+	}
+
+	public void visit(IndexScan op) {
+		this.relations.add((NamedRelation) op.getRelation());
+		this.predicates.add(op.getPredicate());
+	}
+
+	public void visit(BitmapScan op) {
+		this.relations.add((NamedRelation) op.getRelation());
+		this.predicates.addAll(op.getPredicates());
+	}
+
+	public void visit(Project op) {
+	}
+
+	public void visit(Select op) {
+		this.predicates.add(op.getPredicate());
+	}
+
+	public void visit(RuntimeFilter op) {
+	}
+
+	public void visit(Exchange op) {
+	}
+
+	public void visit(Fetch op) {
+	}
+
+	public void visit(Aggregate op) {
+	}
+
+	public void visit(Limit op) {
+	}
+
+	public void visit(TopK op) {
+	}
+
+	public void visit(CachedResult op) {
+	}
+
+	public void visit(Product op) {
+	}
+
+	public void visit(Join op) {
+		this.predicates.add(op.getPredicate());
+	}
+
+	public void visit(MultiwayJoin op) {
+		this.predicates.addAll(op.getPredicates());
+	}
+
+	public void visit(StarJoin op) {
+		this.predicates.addAll(op.getPredicates());
+	}
+
+	public void visit(SemiJoin op) {
+	}
+
+	/**
+	 * Return the named relations scanned by the query
+	 * @return Named relations
+	 */
+	public List<NamedRelation> getRelations() {
+		return this.relations;
+	}
+
+	/**
+	 * Return the predicates of the form attr=attr that relate two
+	 * different relations
+	 * @return Join predicates
+	 */
+	public List<Predicate> getJoinPredicates() {
+		return this.joinPredicates;
+	}
+
+	/**
+	 * Return the attributes projected by the query, or null if the
+	 * query projects all attributes
+	 * @return Projected attributes
+	 */
+	public List<Attribute> getProjection() {
+		return this.projection;
+	}
+
+	/**
+	 * Return true if the join graph has a cycle, that is, if some of the
+	 * relations are joined in a ring, such as three relations each joined
+	 * to the other two. Several predicates between the same two relations
+	 * do not make a cycle.
+	 * @return true if the query is cyclic
+	 */
+	public boolean isCyclic() {
+		Map<NamedRelation, NamedRelation> parent = new HashMap<NamedRelation, NamedRelation>();
+		for (NamedRelation reln : this.relations) {
+			parent.put(reln, reln);
+		}
+		Set<String> edges = new HashSet<String>();
+		for (Predicate p : this.joinPredicates) {
+			NamedRelation left = relationOf(p.getLeftAttribute());
+			NamedRelation right = relationOf(p.getRightAttribute());
+			String edge = left.toString().compareTo(right.toString()) <= 0 ? left + "-" + right : right + "-" + left;
+			if (!edges.add(edge)) {
+				continue;
+			}
+			NamedRelation l = root(parent, left);
+			NamedRelation r = root(parent, right);
+			if (l == r) {
+				return true;
+			}
+			parent.put(l, r);
+		}
+		return false;
+	}
+
+	/**
+	 * Return the fact relation of a star, or null if the join graph is not
+	 * a star: the fact relation is joined by one predicate to each of at
+	 * least two dimension relations, every join predicate relates the fact
+	 * relation to a dimension, and the fact relation is larger than each
+	 * of its dimensions.
+	 * @return Fact relation, or null
+	 */
+	public NamedRelation getStarCentre() {
+		if (this.relations.size() < 3 || this.joinPredicates.size() != this.relations.size() - 1) {
+			return null;
+		}
+		for (NamedRelation centre : this.relations) {
+			Set<NamedRelation> dimensions = new HashSet<NamedRelation>();
+			for (Predicate p : this.joinPredicates) {
+				NamedRelation left = relationOf(p.getLeftAttribute());
+				NamedRelation right = relationOf(p.getRightAttribute());
+				if (left == centre && right.getTupleCount() < centre.getTupleCount()) {
+					dimensions.add(right);
+				} else if (right == centre && left.getTupleCount() < centre.getTupleCount()) {
+					dimensions.add(left);
+				}
+			}
+			if (dimensions.size() == this.relations.size() - 1) {
+				return centre;
+			}
+		}
+		return null;
+	}
+
+	private static NamedRelation root(Map<NamedRelation, NamedRelation> parent, NamedRelation reln) {
+		while (parent.get(reln) != reln) {
+			reln = parent.get(reln);
+		}
+		return reln;
+	}
+
+	/**
+	 * Return the relation that contains the given attribute, or null
+	 * @param attr Attribute
+	 * @return Named relation containing the attribute
+	 */
+	public NamedRelation relationOf(Attribute attr) {
+		for (NamedRelation reln : this.relations) {
+			if (reln.getAttributes().contains(attr)) {
+				return reln;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return the predicates that apply to the given relation alone
+	 * @param reln Named relation
+	 * @return Predicates over the relation
+	 */
+	public List<Predicate> getPredicates(NamedRelation reln) {
+		List<Predicate> ret = new ArrayList<Predicate>();
+		for (Predicate p : this.predicates) {
+			if (relationOf(p.getLeftAttribute()) == reln) {
+				ret.add(p);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Build a new access plan for the given relation: a scan with the
+	 * relation's own predicates applied, estimated with the given estimator.
+	 * @param reln Named relation
+	 * @param estimator Estimator used to set the outputs of the new operators
+	 * @return Access plan
+	 */
+	public Operator leaf(NamedRelation reln, Estimator estimator) {
+		return accessPath(reln, getPredicates(reln), estimator);
+	}
+
+	/**
+	 * Build a new plan that scans the whole of the given relation and
+	 * applies its own predicates with selects, as needed for the right input
+	 * of an index nested loop join.
+	 * @param reln Named relation
+	 * @param estimator Estimator used to set the outputs of the new operators
+	 * @return Scan of the relation with its selects
+	 */
+	public Operator baseLeaf(NamedRelation reln, Estimator estimator) {
+		Operator op = selects(new Scan(reln), getPredicates(reln), Collections.<Predicate>emptyList());
+		op.accept(estimator);
+		return op;
+	}
+
+	/**
+	 * Build the cheapest plan that reads the tuples of a relation satisfying
+	 * all the given predicates: either a scan of the whole relation, an
+	 * index scan on one of the attr=value predicates, or a bitmap scan that
+	 * intersects the bitmaps of all the attr=value predicates on attributes
+	 * with bitmap indexes, with the remaining predicates applied by selects
+	 * above it.
+	 * @param reln Named relation
+	 * @param predicates Predicates over the relation
+	 * @param estimator Estimator used to cost the plans and set their outputs
+	 * @return Cheapest access plan
+	 */
+	public static Operator accessPath(NamedRelation reln, List<Predicate> predicates, Estimator estimator) {
+		Operator best = selects(new Scan(reln), predicates, Collections.<Predicate>emptyList());
+		int lowestCost = estimator.estimate(best);
+		List<Predicate> bitmapped = new ArrayList<Predicate>();
+		for (Predicate p : predicates) {
+			Index index = reln.getIndex(p.getLeftAttribute());
+			if (!p.equalsValue() || index == null) {
+				continue;
+			}
+			if (index.getType() == IndexType.BITMAP) {
+				bitmapped.add(p);
+			}
+			Operator op = selects(new IndexScan(reln, index, p), predicates, Collections.singletonList(p));
+			int cost = estimator.estimate(op);
+			if (cost < lowestCost) {
+				lowestCost = cost;
+				best = op;
+			}
+		}
+		// a single bitmap is no better than the index scan on it
+		if (bitmapped.size() > 1) {
+			Operator op = selects(new BitmapScan(reln, bitmapped), predicates, bitmapped);
+			int cost = estimator.estimate(op);
+			if (cost < lowestCost) {
+				lowestCost = cost;
+				best = op;
+			}
+		}
+		// estimate() has set the outputs of the plan that was costed last
+		best.accept(estimator);
+		return best;
+	}
+
+	private static Operator selects(Operator op, List<Predicate> predicates, List<Predicate> applied) {
+		for (Predicate p : predicates) {
+			if (!applied.contains(p)) {
+				op = new Select(op, p);
+			}
+		}
+		return op;
+	}
+
+	/**
+	 * Return the join predicates that relate the outputs of the two
+	 * operators, each turned around if necessary so that its left
+	 * attribute comes from the left operator.
+	 * @param left Left operator
+	 * @param right Right operator
+	 * @return Join predicates between left and right
+	 */
+	public List<Predicate> joinPredicates(Operator left, Operator right) {
+		List<Predicate> ret = new ArrayList<Predicate>();
+		List<Attribute> l = left.getOutput().getAttributes();
+		List<Attribute> r = right.getOutput().getAttributes();
+		for (Predicate p : this.joinPredicates) {
+			if (l.contains(p.getLeftAttribute()) && r.contains(p.getRightAttribute())) {
+				ret.add(p);
+			} else if (l.contains(p.getRightAttribute()) && r.contains(p.getLeftAttribute())) {
+				ret.add(new Predicate(p.getRightAttribute(), p.getLeftAttribute()));
+			}
+		}
+		return ret;
+	}
+}
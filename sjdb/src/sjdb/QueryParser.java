@@ -26,6 +26,39 @@ import java.util.regex.Matcher;
  * The WHERE line (corresponding to the select operators) is optional and 
  * may be omitted; the other lines are required.
  * 
+ * A predicate in the WHERE line may also be a subquery, of one of the forms:
+ * 
+ * <attribute name> IN (SELECT <attribute name> FROM <relations> WHERE <predicates>)
+ * <attribute name> NOT IN (SELECT <attribute name> FROM <relations> WHERE <predicates>)
+ * EXISTS (SELECT * FROM <relations> WHERE <predicates>)
+ * NOT EXISTS (SELECT * FROM <relations> WHERE <predicates>)
+ * 
+ * where the WHERE part is optional, and its predicates may refer to the
+ * attributes of the enclosing query (but not to those of a query further
+ * out). Each subquery is placed above the selects as a semi-join (or, with
+ * NOT, an anti-join) of the enclosing query with the subquery, and the
+ * Decorrelator then turns the predicates that refer to the enclosing query
+ * into predicates of the semi-join.
+ * 
+ * The SELECT line may also contain aggregate calls of the form
+ * COUNT(*), COUNT(<attribute name>), SUM(<attribute name>),
+ * MIN(<attribute name>) or MAX(<attribute name>), and may be followed
+ * (after the WHERE line, if any) by a line of the form:
+ * 
+ * GROUP BY <attribute name>,<attribute name>,...,<attribute name>
+ * 
+ * in which case an aggregate operator that groups on the given attributes
+ * and computes the calls is placed below the project. Aggregate calls
+ * without a GROUP BY line aggregate the whole input into a single tuple.
+ * 
+ * Finally, the query may end with either or both of the lines:
+ * 
+ * ORDER BY <attribute name> [DESC]
+ * LIMIT <count>
+ * 
+ * which place a top-k operator (or, without ORDER BY, a limit operator)
+ * above the project. The ORDER BY attribute must be one that is projected.
+ * 
  * To form the canonical query, a left-deep tree of cartesian
  * products over scans over the named relations is built, following by a series
  * of select with the given predicates, and then a single project 
@@ -41,6 +74,10 @@ import java.util.regex.Matcher;
 public class QueryParser {
 	private BufferedReader reader;
 	private Catalogue catalogue;
+	private static final Pattern AGGREGATE_CALL = Pattern.compile("(COUNT|SUM|MIN|MAX)\\((\\*|\\w+)\\)");
+	private static final Pattern IN_SUBQUERY = Pattern.compile("(\\w+)\\s+(NOT\\s+)?IN\\s*\\((.*)\\)");
+	private static final Pattern EXISTS_SUBQUERY = Pattern.compile("(NOT\\s+)?EXISTS\\s*\\((.*)\\)");
+	private static final Pattern SUBQUERY = Pattern.compile("SELECT\\s+(.+?)\\s+FROM\\s+(.+?)(?:\\s+WHERE\\s+(.*))?");
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
@@ -57,26 +94,118 @@ public class QueryParser {
 	
 	/**
 	 * Read a query from the input (via the BufferedReader) and parse it
-	 * to create a canonical query plan.
+	 * to create a canonical query plan, with its subqueries decorrelated.
 	 * 
 	 * @return
 	 * @throws Exception
 	 */
 	public Operator parse() throws Exception {
+		return Decorrelator.unnest(parseQuery());
+	}
+	
+	/**
+	 * Read a query from the input and parse it to create a canonical
+	 * query plan, in which the predicates of a subquery that refer to
+	 * the enclosing query are still selects within the subquery.
+	 * 
+	 * @return
+	 * @throws Exception
+	 */
+	private Operator parseQuery() throws Exception {
 		Operator product, select, project;
 		String projectLine = this.reader.readLine();
 		String productLine = this.reader.readLine();
-		String selectLine = this.reader.readLine();
+		String selectLine = null;
+		String groupLine = null;
+		String orderLine = null;
+		String limitLine = null;
+		String line;
+		
+		// the optional lines may be left out, but come in this order
+		while ((line = this.reader.readLine()) != null) {
+			if (line.startsWith("WHERE")) {
+				selectLine = line;
+			} else if (line.startsWith("GROUP BY")) {
+				groupLine = line;
+			} else if (line.startsWith("ORDER BY")) {
+				orderLine = line;
+			} else if (line.startsWith("LIMIT")) {
+				limitLine = line;
+			}
+		}
 		
 		product = parseProduct(productLine);
 		if (selectLine != null && selectLine.startsWith("WHERE")) {
 			select = parseSelect(selectLine, product); 
-			project = parseProject(projectLine, select);
 		} else {
-			project = parseProject(projectLine, product);
+			select = product;
+		}
+		select = parseAggregate(projectLine, groupLine, select);
+		project = parseProject(projectLine, select);
+		
+		return parseLimit(orderLine, limitLine, project);
+	}
+	
+	/**
+	 * Build a top-k operator from an "ORDER BY ..." line and a "LIMIT ..."
+	 * line, or a limit operator if there is no "ORDER BY ..." line. Either
+	 * line may be null; without a "LIMIT ..." line, the top-k sorts its
+	 * whole input.
+	 * @param orderLine
+	 * @param limitLine
+	 * @param op
+	 * @return
+	 */
+	private Operator parseLimit(String orderLine, String limitLine, Operator op) {
+		int count = Integer.MAX_VALUE;
+		if (limitLine != null) {
+			count = Integer.parseInt(limitLine.split("LIMIT\\s+")[1].trim());
+		}
+		if (orderLine != null) {
+			String[] order = orderLine.split("ORDER BY\\s+")[1].trim().split("\\s+");
+			boolean descending = order.length > 1 && order[1].equals("DESC");
+			return new TopK(op, new Attribute(order[0]), descending, count);
+		}
+		if (limitLine != null) {
+			return new Limit(op, count);
+		}
+		return op;
+	}
+	
+	/**
+	 * Build an aggregate operator from the aggregate calls in a "SELECT ..."
+	 * line and the attributes in a "GROUP BY ..." line (which may be null).
+	 * If there are neither, the operator is returned unchanged.
+	 * @param projectLine
+	 * @param groupLine
+	 * @param op
+	 * @return
+	 */
+	private Operator parseAggregate(String projectLine, String groupLine, Operator op) {
+		ArrayList<Attribute> groupBy = new ArrayList<Attribute>();
+		ArrayList<AggregateCall> calls = new ArrayList<AggregateCall>();
+		
+		if (groupLine != null && groupLine.startsWith("GROUP BY")) {
+			String[] atts = groupLine.split("GROUP BY\\s+");
+			for (String attr : atts[1].split("\\s*,\\s*")) {
+				groupBy.add(new Attribute(attr.trim()));
+			}
 		}
 		
-		return project;
+		String[] atts = projectLine.split("SELECT\\s+");
+		for (String attr : atts[1].split("\\s*,\\s*")) {
+			Matcher m = AGGREGATE_CALL.matcher(attr.trim());
+			if (m.matches()) {
+				AggregateFunction function = AggregateFunction.valueOf(m.group(1));
+				Attribute arg = m.group(2).equals("*") ? null : new Attribute(m.group(2));
+				calls.add(new AggregateCall(function, arg));
+			}
+		}
+		
+		if (groupBy.isEmpty() && calls.isEmpty()) {
+			return op;
+		}
+		return new Aggregate(op, groupBy, calls);
 	}
 	
 	/**
@@ -135,19 +264,103 @@ public class QueryParser {
 	 * @param op
 	 * @return
 	 */
-	private Operator parseSelect(String line, Operator op) {
-		String[] prds = line.split("WHERE\\s+");
+	private Operator parseSelect(String line, Operator op) throws Exception {
+		String[] prds = line.split("WHERE\\s+", 2);
 
-		String[] pred = prds[1].split("\\s*,\\s*");
+		ArrayList<String> pred = splitPredicates(prds[1]);
+		ArrayList<String> subqueries = new ArrayList<String>();
 		Operator ret = op;
 		
-		for (int i=0; i<pred.length; i++) {
-			ret = buildSelect(pred[i].trim(), ret);
+		for (int i=0; i<pred.size(); i++) {
+			if (pred.get(i).contains("(")) {
+				subqueries.add(pred.get(i));
+			} else {
+				ret = buildSelect(pred.get(i), ret);
+			}
+		}
+		for (String subquery : subqueries) {
+			ret = buildSemiJoin(subquery, ret);
 		}
 		
 		return ret;
 	}
 	
+	/**
+	 * Split the predicates of a "WHERE ..." line on the commas that are
+	 * not within the brackets of a subquery.
+	 * @param line
+	 * @return
+	 */
+	private static ArrayList<String> splitPredicates(String line) {
+		ArrayList<String> ret = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				ret.add(line.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		ret.add(line.substring(start).trim());
+		return ret;
+	}
+	
+	/**
+	 * Build a semi-join (or anti-join) of the operator with an IN or
+	 * EXISTS subquery.
+	 * @param pred
+	 * @param op
+	 * @return
+	 * @throws Exception
+	 */
+	private Operator buildSemiJoin(String pred, Operator op) throws Exception {
+		Matcher in = IN_SUBQUERY.matcher(pred);
+		Matcher exists = EXISTS_SUBQUERY.matcher(pred);
+		ArrayList<Predicate> predicates = new ArrayList<Predicate>();
+		Operator subquery;
+		boolean anti;
+		
+		if (in.matches()) {
+			subquery = parseSubquery(in.group(3));
+			if (!(subquery instanceof Project) || ((Project) subquery).getAttributes().size() != 1) {
+				throw new Exception("IN subquery must select a single attribute: " + pred);
+			}
+			predicates.add(new Predicate(new Attribute(in.group(1)), ((Project) subquery).getAttributes().get(0)));
+			anti = in.group(2) != null;
+		} else if (exists.matches()) {
+			subquery = parseSubquery(exists.group(2));
+			anti = exists.group(1) != null;
+		} else {
+			throw new Exception("Cannot parse predicate: " + pred);
+		}
+		
+		return new SemiJoin(op, subquery, predicates, anti);
+	}
+	
+	/**
+	 * Parse the "SELECT ... FROM ... WHERE ..." of a subquery, given on
+	 * one line, into its canonical plan.
+	 * @param query
+	 * @return
+	 * @throws Exception
+	 */
+	private Operator parseSubquery(String query) throws Exception {
+		Matcher m = SUBQUERY.matcher(query.trim());
+		if (!m.matches()) {
+			throw new Exception("Cannot parse subquery: " + query);
+		}
+		String lines = "SELECT " + m.group(1) + "\nFROM " + m.group(2) + "\n";
+		if (m.group(3) != null) {
+			lines += "WHERE " + m.group(3) + "\n";
+		}
+		return new QueryParser(this.catalogue, new StringReader(lines)).parseQuery();
+	}
+	
 	/**
 	 * Build a chain of select operators.
 	 * @param pred
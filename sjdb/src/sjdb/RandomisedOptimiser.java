@@ -0,0 +1,269 @@
+package sjdb;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A randomised join order optimiser for queries with too many relations to
+ * enumerate every join order, using two-phase optimisation: iterative
+ * improvement from several random left-deep plans, followed by simulated
+ * annealing from the best local minimum found.
+ *
+ * A state is a left-deep plan, given by the order in which the relations are
+ * joined and the method used for each join. The moves are swapping two
+ * relations, rotating three relations, and changing the method of one join.
+ * Plans are costed with the Estimator.
+ *
+ * Independent restarts (each with its own random generator, seeded from the
+ * optimiser's seed) can be run in parallel; the result only depends on the
+ * seed and the number of restarts, not on the number of threads.
+ */
+public class RandomisedOptimiser {
+    private Catalogue catalogue;
+    private long seed;
+    private int restarts;
+    private int threads;
+    private QueryGraph graph;
+
+    // 第一阶段（iterative improvement）的随机起点数量
+    private static final int START_PLANS = 10;
+    // 模拟退火的初始温度（相对第一阶段最优计划开销的比例）和降温系数
+    private static final double INITIAL_TEMPERATURE = 0.1;
+    private static final double COOLING = 0.95;
+
+    public RandomisedOptimiser(Catalogue catalogue) {
+        this(catalogue, 0, 1, 1);
+    }
+
+    /**
+     * @param catalogue System catalogue
+     * @param seed Seed of the random generators, for reproducible plans
+     * @param restarts Number of independent restarts of the whole search
+     * @param threads Number of threads to run the restarts on
+     */
+    public RandomisedOptimiser(Catalogue catalogue, long seed, int restarts, int threads) {
+        this.catalogue = catalogue;
+        this.seed = seed;
+        this.restarts = restarts;
+        this.threads = threads;
+    }
+
+    public Operator optimise(Operator plan) {
+        if(LimitPlanner.hasLimit(plan)) {
+            return LimitPlanner.optimise(plan, this::optimise);
+        }
+        if(AggregatePlanner.hasAggregate(plan)) {
+            return AggregatePlanner.optimise(plan, this::optimise);
+        }
+        if(SemiJoinPlanner.hasSemiJoin(plan)) {
+            return SemiJoinPlanner.optimise(plan, this::optimise);
+        }
+        this.graph = new QueryGraph(plan);
+        int relations = graph.getRelations().size();
+        if(relations == 1) {
+            return build(new State(new int[] {0}, new JoinMethod[0]), new Estimator());
+        }
+
+        List<Callable<State>> searches = new ArrayList<>();
+        for(int i=0;i<restarts;i++) {
+            final long restartSeed = seed + i;
+            searches.add(() -> twoPhase(new Random(restartSeed), new Estimator()));
+        }
+        List<State> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            for(Future<State> f : pool.invokeAll(searches)) {
+                results.add(f.get());
+            }
+        } catch(InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+
+        // restarts are compared in order, so ties always go to the same one
+        State best = null;
+        for(State s : results) {
+            if(best == null || s.cost < best.cost) {
+                best = s;
+            }
+        }
+        Operator binary = new RuntimeFilterPlanner().plan(build(best, new Estimator()));
+        return StarJoinPlanner.plan(graph, MultiwayJoinPlanner.plan(graph, binary));
+    }
+
+    /**
+     * Two-phase optimisation: iterative improvement from random plans, then simulated
+     * annealing from the best local minimum with a low initial temperature.
+     */
+    private State twoPhase(Random random, Estimator estimator) {
+        State best = null;
+        for(int i=0;i<START_PLANS;i++) {
+            State local = iterativeImprovement(randomState(random, estimator), random, estimator);
+            if(best == null || local.cost < best.cost) {
+                best = local;
+            }
+        }
+        State annealed = simulatedAnnealing(best, random, estimator);
+        return annealed.cost < best.cost ? annealed : best;
+    }
+
+    /**
+     * Accept only downhill moves, until no improvement has been found for a number
+     * of moves proportional to the size of the neighbourhood.
+     */
+    private State iterativeImprovement(State state, Random random, Estimator estimator) {
+        int n = state.order.length;
+        int limit = n * n;
+        int failures = 0;
+        while(failures < limit) {
+            State next = move(state, random, estimator);
+            if(next.cost < state.cost) {
+                state = next;
+                failures = 0;
+            }else {
+                failures++;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Accept uphill moves with probability exp(-delta/T), cooling after each stage of
+     * moves, until the system is frozen: the temperature is below one tuple and a stage
+     * has passed without improving on the best plan.
+     */
+    private State simulatedAnnealing(State start, Random random, Estimator estimator) {
+        int n = start.order.length;
+        int stageLength = 4 * n * n;
+        State state = start;
+        State best = start;
+        double temperature = Math.max(1, INITIAL_TEMPERATURE * start.cost);
+        boolean improved = true;
+        while(temperature >= 1 || improved) {
+            improved = false;
+            for(int i=0;i<stageLength;i++) {
+                State next = move(state, random, estimator);
+                long delta = (long) next.cost - state.cost;
+                if(delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                    state = next;
+                    if(state.cost < best.cost) {
+                        best = state;
+                        improved = true;
+                    }
+                }
+            }
+            temperature *= COOLING;
+        }
+        return best;
+    }
+
+    private State randomState(Random random, Estimator estimator) {
+        int n = graph.getRelations().size();
+        List<Integer> order = new ArrayList<>();
+        for(int i=0;i<n;i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        int[] o = new int[n];
+        for(int i=0;i<n;i++) {
+            o[i] = order.get(i);
+        }
+        JoinMethod[] methods = new JoinMethod[n-1];
+        for(int i=0;i<n-1;i++) {
+            methods[i] = JoinMethod.values()[random.nextInt(JoinMethod.values().length)];
+        }
+        State state = new State(o, methods);
+        state.cost = estimator.estimate(build(state, estimator));
+        return state;
+    }
+
+    /**
+     * Apply a random move to a copy of the state: swap two relations, rotate three
+     * relations, or change the method of one join.
+     */
+    private State move(State state, Random random, Estimator estimator) {
+        int n = state.order.length;
+        int[] order = state.order.clone();
+        JoinMethod[] methods = state.methods.clone();
+        int kind = random.nextInt(n >= 3 ? 3 : 2);
+        if(kind == 0) {
+            int i = random.nextInt(n);
+            int j = random.nextInt(n);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }else if(kind == 1) {
+            int i = random.nextInt(n-1);
+            methods[i] = JoinMethod.values()[random.nextInt(JoinMethod.values().length)];
+        }else {
+            int i = random.nextInt(n);
+            int j = random.nextInt(n);
+            int k = random.nextInt(n);
+            if(i != j && j != k && i != k) {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = order[k];
+                order[k] = tmp;
+            }
+        }
+        State next = new State(order, methods);
+        next.cost = estimator.estimate(build(next, estimator));
+        return next;
+    }
+
+    /**
+     * Build the left-deep plan of a state. Each relation is joined to the plan so far on
+     * the first predicate that relates them, with any other such predicates applied by a
+     * select above the join; a relation that is not related to the plan so far is added
+     * with a product.
+     *
+     * The right input of an index nested loop join is a plain scan of its relation, joined
+     * on an indexed attribute if there is one; without such an index the Estimator gives
+     * the plan an infinite cost, and the search moves away from it.
+     */
+    private Operator build(State state, Estimator estimator) {
+        List<NamedRelation> relations = graph.getRelations();
+        Operator plan = graph.leaf(relations.get(state.order[0]), estimator);
+        for(int i=1;i<state.order.length;i++) {
+            NamedRelation reln = relations.get(state.order[i]);
+            JoinMethod method = state.methods[i-1];
+            Operator right = method == JoinMethod.INDEX_NESTED_LOOP ?
+                    graph.baseLeaf(reln, estimator) : graph.leaf(reln, estimator);
+            List<Predicate> preds = graph.joinPredicates(plan, right);
+            if(method == JoinMethod.INDEX_NESTED_LOOP) {
+                for(int j=1;j<preds.size();j++) {
+                    if(reln.getIndex(preds.get(j).getRightAttribute()) != null) {
+                        preds.add(0, preds.remove(j));
+                        break;
+                    }
+                }
+            }
+            if(preds.isEmpty()) {
+                plan = new Product(plan, right);
+            }else {
+                plan = new Join(plan, right, preds.get(0), method);
+                for(int j=1;j<preds.size();j++) {
+                    plan = new Select(plan, preds.get(j));
+                }
+            }
+            plan.accept(estimator);
+        }
+        if(graph.getProjection() != null) {
+            plan = new Project(plan, graph.getProjection());
+            plan.accept(estimator);
+        }
+        return plan;
+    }
+
+    private static class State {
+        private final int[] order;
+        private final JoinMethod[] methods;
+        private int cost;
+
+        private State(int[] order, JoinMethod[] methods) {
+            this.order = order;
+            this.methods = methods;
+        }
+    }
+}
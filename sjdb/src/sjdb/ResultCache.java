@@ -0,0 +1,204 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * A cache of materialised intermediate results, keyed by the fingerprint of the result
+ * (Fingerprint.ofResult()), so that a subplan computed by one query, such as a filtered
+ * dimension relation, can be read back by a later query that needs the same result
+ * instead of being computed again.
+ *
+ * The cache holds at most a given number of values (tuples times attributes). When it
+ * is full, results are evicted with GreedyDual-Size: each result has a priority of its
+ * cost to compute (as estimated) per value stored, plus an inflation value that is raised
+ * to the priority of every evicted result, so that results that were expensive to compute
+ * and are small to store are kept, while results that are no longer read age out.
+ *
+ * A result depends on the data of the relations it reads, so the results that read a
+ * relation must be invalidated when its data changes.
+ */
+public class ResultCache {
+    private final long capacity;
+    private final Map<String, StoredResult> results = new HashMap<>();
+    private long used = 0;
+    private double inflation = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param capacity Maximum number of values held
+     */
+    public ResultCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Store the result of the given subplan, evicting other results if needed to make
+     * room. A result larger than the whole cache, or of a subplan that does more than
+     * scan, select, project and join, is not stored.
+     * @return true if the result was stored
+     */
+    public boolean put(Operator subplan) {
+        Estimator estimator = new Estimator();
+        int cost = estimator.estimate(subplan);
+        String key = Fingerprint.ofResult(subplan);
+        if(key == null) {
+            return false;
+        }
+        Relation output = subplan.getOutput();
+        long size = Math.max(1, (long) output.getTupleCount() * output.getAttributes().size());
+        if(size > capacity) {
+            return false;
+        }
+        remove(key);
+        while(used + size > capacity) {
+            evict();
+        }
+        Relation result = new Relation(output.getTupleCount());
+        for(Attribute attr : output.getAttributes()) {
+            result.addAttribute(new Attribute(attr));
+        }
+        StoredResult stored = new StoredResult(result, new Fingerprint(subplan).getRelations(), cost, size);
+        stored.priority = inflation + stored.benefit();
+        results.put(key, stored);
+        used += size;
+        return true;
+    }
+
+    /**
+     * Return a read of the cached result of the given subplan, or null
+     */
+    public CachedResult get(Operator subplan) {
+        new Estimator().estimate(subplan);
+        String key = Fingerprint.ofResult(subplan);
+        StoredResult stored = key == null ? null : results.get(key);
+        if(stored == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        stored.priority = inflation + stored.benefit();
+        return new CachedResult(key, stored.result);
+    }
+
+    /**
+     * Replace each subplan of an optimised plan whose result is cached by a read of the
+     * result, where reading it is cheaper than computing it. The plan is searched from
+     * the root down, so the largest such subplans are replaced. The right input of an
+     * index nested loop join is never replaced, as it must be a scan of the indexed relation.
+     * A runtime filter built from a replaced subplan is built from the cached result instead.
+     * @return the plan with the cached results read in
+     */
+    public Operator substitute(Operator plan) {
+        Estimator estimator = new Estimator();
+        estimator.estimate(plan);
+        Map<Operator, Operator> replaced = new IdentityHashMap<>();
+        Operator ret = repoint(replace(plan, replaced), replaced);
+        ret.accept(estimator);
+        return ret;
+    }
+
+    private Operator replace(Operator op, Map<Operator, Operator> replaced) {
+        String key = Fingerprint.ofResult(op);
+        StoredResult stored = key == null ? null : results.get(key);
+        if(stored != null && stored.result.getTupleCount() < new Estimator().estimate(op)) {
+            hits++;
+            stored.priority = inflation + stored.benefit();
+            CachedResult read = new CachedResult(key, stored.result);
+            replaced.put(op, read);
+            return read;
+        }
+        for(int i=0;i<op.inputs.size();i++) {
+            if(i == 1 && op instanceof Join && ((Join) op).getMethod() == JoinMethod.INDEX_NESTED_LOOP) {
+                continue;
+            }
+            op.inputs.set(i, replace(op.inputs.get(i), replaced));
+        }
+        return op;
+    }
+
+    /*
+     * rebuild the runtime filters whose source was replaced, over the read of the result
+     */
+    private Operator repoint(Operator op, Map<Operator, Operator> replaced) {
+        for(int i=0;i<op.inputs.size();i++) {
+            op.inputs.set(i, repoint(op.inputs.get(i), replaced));
+        }
+        if(op instanceof RuntimeFilter && replaced.containsKey(((RuntimeFilter) op).getSource())) {
+            RuntimeFilter filter = (RuntimeFilter) op;
+            return new RuntimeFilter(filter.getInput(), replaced.get(filter.getSource()),
+                    filter.getBuildAttribute(), filter.getProbeAttribute(), filter.getType());
+        }
+        return op;
+    }
+
+    /**
+     * Remove every cached result that reads the named relation
+     */
+    public void invalidate(String relation) {
+        Iterator<StoredResult> iter = results.values().iterator();
+        while(iter.hasNext()) {
+            StoredResult stored = iter.next();
+            if(stored.relations.contains(relation)) {
+                used -= stored.size;
+                iter.remove();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        StoredResult stored = results.remove(key);
+        if(stored != null) {
+            used -= stored.size;
+        }
+    }
+
+    /*
+     * evict the result with the lowest priority, and raise the inflation to its priority
+     */
+    private void evict() {
+        String victim = null;
+        for(Map.Entry<String, StoredResult> e : results.entrySet()) {
+            if(victim == null || e.getValue().priority < results.get(victim).priority) {
+                victim = e.getKey();
+            }
+        }
+        inflation = results.get(victim).priority;
+        remove(victim);
+    }
+
+    /**
+     * @return the number of values held
+     */
+    public long getUsed() {
+        return used;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    private static class StoredResult {
+        private final Relation result;
+        private final Set<String> relations;
+        private final int cost;
+        private final long size;
+        private double priority;
+
+        private StoredResult(Relation result, Set<String> relations, int cost, long size) {
+            this.result = result;
+            this.relations = relations;
+            this.cost = cost;
+            this.size = size;
+        }
+
+        // 每存一个值节省的计算开销
+        private double benefit() {
+            return (double) cost / size;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package sjdb;
+
+import java.util.Map;
+
+/**
+ * This class implements a RuntimeFilter operator, which passes sideways
+ * information from a join to the probe side of the join: the join builds
+ * a filter over the values of its join attribute on its build side (its
+ * left input), and the filter discards the tuples of the probe side whose
+ * join attribute value cannot match before they reach the join.
+ *
+ * The filter is placed on the scan of the probe side's relation, so the
+ * operators between the scan and the join see fewer tuples. The build
+ * side is not an input of the filter; it is visited before the filter in a
+ * depth-first, left-to-right traversal, so its output is available when
+ * the filter is estimated.
+ */
+public class RuntimeFilter extends UnaryOperator {
+	private Operator source;
+	private Attribute buildAttribute;
+	private Attribute probeAttribute;
+	private FilterType type;
+
+	/**
+	 * Create a new runtime filter
+	 * @param input Child operator, on the probe side of the join
+	 * @param source Build side of the join, whose values fill the filter
+	 * @param buildAttribute Join attribute on the build side
+	 * @param probeAttribute Join attribute on the probe side
+	 * @param type Kind of filter
+	 */
+	public RuntimeFilter(Operator input, Operator source, Attribute buildAttribute,
+			Attribute probeAttribute, FilterType type) {
+		super(input);
+		this.source = source;
+		this.buildAttribute = buildAttribute;
+		this.probeAttribute = probeAttribute;
+		this.type = type;
+	}
+
+	/**
+	 * @return the build side of the join, whose values fill the filter
+	 */
+	public Operator getSource() {
+		return this.source;
+	}
+
+	/**
+	 * @return the join attribute on the build side
+	 */
+	public Attribute getBuildAttribute() {
+		return this.buildAttribute;
+	}
+
+	/**
+	 * @return the join attribute on the probe side, tested by the filter
+	 */
+	public Attribute getProbeAttribute() {
+		return this.probeAttribute;
+	}
+
+	/**
+	 * @return the kind of filter
+	 */
+	public FilterType getType() {
+		return this.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#copy(java.util.Map)
+	 */
+	@Override
+	protected Operator copy(Map<Operator, Operator> copies) {
+		RuntimeFilter ret = (RuntimeFilter) super.copy(copies);
+		// the source is the build side of a join elsewhere in the plan, copied along with it
+		ret.source = this.source.copy(copies);
+		return ret;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	public String toString() {
+		return "FILTER " + this.type + " [" + this.probeAttribute.getName() + " IN " +
+				this.buildAttribute.getName() + "] (" + getInput().toString() + ")";
+	}
+}
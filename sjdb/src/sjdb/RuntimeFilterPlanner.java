@@ -0,0 +1,123 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Places runtime filters in an optimised plan, for sideways information passing:
+ * a join may build a filter over the join attribute values of its build side (its
+ * left input) and push it down to the scan of the relation on its probe side, so
+ * that tuples which cannot join are dropped before the operators above the scan
+ * see them.
+ *
+ * Only hash joins (and joins whose method is not chosen yet) build filters, as
+ * only they finish reading their left input before they read the right one. The
+ * filter is pushed down the probe path of the right input alone, the inputs that
+ * stream into the join while it runs: never into the build side of a join below,
+ * the materialised right input of a nested loop join, or the right input of an
+ * index nested loop join, which is only probed through its index.
+ *
+ * Each candidate filter is kept only if it lowers the Estimator's cost of the whole
+ * plan, so filters are only placed where the build side's selectivity pays for
+ * testing every tuple of the probe side. A filter holds the exact set of values
+ * when the build side has at most KEYSET_LIMIT of them, and is a Bloom filter
+ * otherwise.
+ */
+public class RuntimeFilterPlanner {
+    // 构建侧不同值的数量不超过这个值时，直接保存精确的值集合
+    static final int KEYSET_LIMIT = 1024;
+
+    public Operator plan(Operator plan) {
+        Estimator estimator = new Estimator();
+        int cost = estimator.estimate(plan);
+        List<Join> joins = new ArrayList<>();
+        collectJoins(plan, joins);
+        // 自底向上，先处理下层的join
+        for(Join join : joins) {
+            // the other methods read their right input before (or without) finishing the left
+            if(join.getMethod() != null && join.getMethod() != JoinMethod.HASH) {
+                continue;
+            }
+            Predicate p = join.getPredicate();
+            Attribute buildAttr = p.getLeftAttribute();
+            Attribute probeAttr = p.getRightAttribute();
+            if(!join.getLeft().getOutput().getAttributes().contains(buildAttr)) {
+                buildAttr = p.getRightAttribute();
+                probeAttr = p.getLeftAttribute();
+            }
+            Slot slot = findScan(join, 1, probeAttr);
+            if(slot == null) {
+                continue;
+            }
+            int buildValues = join.getLeft().getOutput().getAttribute(buildAttr).getValueCount();
+            FilterType type = buildValues <= KEYSET_LIMIT ? FilterType.KEYSET : FilterType.BLOOM;
+            Operator scan = slot.parent.inputs.get(slot.index);
+            slot.parent.inputs.set(slot.index, new RuntimeFilter(scan, join.getLeft(), buildAttr, probeAttr, type));
+            int filtered = estimator.estimate(plan);
+            if(filtered < cost) {
+                cost = filtered;
+            }else {
+                slot.parent.inputs.set(slot.index, scan);
+            }
+        }
+        // reset the outputs of the plan that is returned
+        estimator.estimate(plan);
+        return plan;
+    }
+
+    /*
+     * the joins of the plan, each after the joins below it
+     */
+    private void collectJoins(Operator op, List<Join> joins) {
+        for(Operator input : op.inputs) {
+            collectJoins(input, joins);
+        }
+        if(op instanceof Join) {
+            joins.add((Join) op);
+        }
+    }
+
+    /*
+     * the position, on the probe path below the given input of the parent, of the scan
+     * that reads the relation containing attr
+     */
+    private Slot findScan(Operator parent, int index, Attribute attr) {
+        Operator op = parent.inputs.get(index);
+        if(op instanceof Scan || op instanceof IndexScan || op instanceof BitmapScan) {
+            return op.getOutput().getAttributes().contains(attr) ? new Slot(parent, index) : null;
+        }
+        int probe = probeInput(op);
+        return probe < 0 ? null : findScan(op, probe, attr);
+    }
+
+    /*
+     * the input that streams through the operator, or -1 if none does
+     */
+    private int probeInput(Operator op) {
+        if(op instanceof Join) {
+            JoinMethod method = ((Join) op).getMethod();
+            if(method == null || method == JoinMethod.HASH) {
+                return 1;
+            }
+            // a merge join sorts both inputs before it starts
+            return method == JoinMethod.MERGE ? -1 : 0;
+        }
+        // a limit or top-k would keep other tuples if some below it were dropped
+        if(op instanceof Limit || op instanceof TopK) {
+            return -1;
+        }
+        if(op instanceof UnaryOperator || op instanceof Product || op instanceof SemiJoin) {
+            return 0;
+        }
+        return -1;
+    }
+
+    private static class Slot {
+        private final Operator parent;
+        private final int index;
+
+        private Slot(Operator parent, int index) {
+            this.parent = parent;
+            this.index = index;
+        }
+    }
+}
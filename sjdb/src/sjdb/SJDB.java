@@ -3,12 +3,23 @@
  */
 package sjdb;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * @author nmg
  *
  */
 public class SJDB {
+	// the most optimised plans kept, for the queries repeated in a batch
+	private static final int PLAN_CACHE_SIZE = 64;
+	// the most values (tuples times attributes) of the results kept
+	private static final long RESULT_CACHE_SIZE = 100000;
+
+	private static PlanCache planCache = new PlanCache(PLAN_CACHE_SIZE);
+	private static ResultCache resultCache = new ResultCache(RESULT_CACHE_SIZE);
 
 	/**
 	 * @param args
@@ -19,18 +30,166 @@ public class SJDB {
 		Catalogue cat = new Catalogue();
 		CatalogueParser catParser = new CatalogueParser(catFile, cat);
 		catParser.parse();
+		// the cached plans and results of a relation are stale once it changes
+		cat.addChangeListener(planCache::invalidate);
+		cat.addChangeListener(resultCache::invalidate);
+		
+		// read stdin, parse, and build canonical query plans; a batch of
+		// queries is given as several queries separated by blank lines
+		List<Operator> plans = new ArrayList<Operator>();
+		for (String query : readAll(System.in).split("\\n\\s*\\n")) {
+			if (!query.trim().isEmpty()) {
+				plans.add(new QueryParser(cat, new StringReader(query.trim())).parse());
+			}
+		}
+		
+		// create estimator visitor and apply it to canonical plans
+		Estimator est = new Estimator();
+		for (Operator plan : plans) {
+			plan.accept(est);
+		}
+		
+		// create optimised plan, using the optimiser named by the optional
+		// second argument; the default optimiser also takes an optional time
+		// budget in milliseconds for its join order search
+		String optimiser = args.length > 1 ? args[1] : "default";
+		Budget budget = new Budget(args.length > 2 ? Long.parseLong(args[2]) : 0, 0);
+		if (plans.size() > 1) {
+			optimiseBatch(cat, optimiser, budget, plans);
+			return;
+		}
+		Operator optPlan = optimise(cat, optimiser, budget, plans.get(0));
+		// fetch the attributes that are only projected after the joins, where that pays off
+		optPlan = new LateMaterialiser().plan(optPlan);
 		
-		// read stdin, parse, and build canonical query plan
-		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
-		Operator plan = queryParser.parse();
-				
-		// create estimator visitor and apply it to canonical plan
-		//Estimator est = new Estimator();
-		//plan.accept(est);
+		// the optional fourth argument is the number of workers available to
+		// the query; the plan is only parallelised if that pays off
+		int workers = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+		if (workers > 1) {
+			optPlan = new ParallelPlanner(workers).plan(optPlan);
+		}
+		optPlan.accept(est);
+		optPlan.accept(new Inspector());
 		
-		// create optimised plan
-		//Optimiser opt = new Optimiser(cat);
-		//Operator optPlan = opt.optimise(plan);
+		// the blocks skipped by the zone maps of the scans
+		reportZoneMaps(optPlan);
+		
+		// the pipelines in which the plan would be evaluated
+		for (Pipeline pipeline : new PipelineBuilder().build(optPlan)) {
+			System.out.println("PIPELINE " + pipeline);
+		}
+	}
+
+	/**
+	 * Optimise a plan with the named optimiser, or take the plan chosen
+	 * before for the same query from the plan cache
+	 */
+	private static Operator optimise(Catalogue cat, String optimiser, Budget budget, Operator plan) {
+		Operator cached = planCache.get(plan);
+		if (cached != null) {
+			return cached;
+		}
+		Operator optPlan = choose(cat, optimiser, budget, plan);
+		planCache.put(plan, optPlan);
+		return optPlan;
+	}
+
+	private static Operator choose(Catalogue cat, String optimiser, Budget budget, Operator plan) {
+		if (optimiser.equals("memo")) {
+			return new MemoOptimiser(cat).optimise(plan);
+		} else if (optimiser.equals("random")) {
+			return new RandomisedOptimiser(cat).optimise(plan);
+		} else if (optimiser.equals("other")) {
+			return new OtherOptimiser(cat).optimise(plan);
+		}
+		Optimiser opt = new Optimiser(cat);
+		Operator optPlan = opt.optimise(plan, budget);
+		if (!opt.isExhaustive()) {
+			System.out.println("(budget exhausted: best plan found so far)");
+		}
+		return optPlan;
+	}
+
+	/**
+	 * Optimise a batch of queries together, and report the plans, the
+	 * subplans they share and the cost of the batch with and without sharing.
+	 * Each query reads back the results cached by the queries before it, and
+	 * caches the results it materialises in turn; the cost without sharing is
+	 * that of the queries before any result is read back.
+	 */
+	private static void optimiseBatch(final Catalogue cat, final String optimiser, final Budget budget,
+			List<Operator> plans) {
+		MultiQueryOptimiser mqo = new MultiQueryOptimiser(p -> optimise(cat, optimiser, budget, p), p -> {
+			Operator optPlan = resultCache.substitute(p);
+			cacheResults(optPlan);
+			resultCache.put(optPlan);
+			return optPlan;
+		});
+		List<Operator> optPlans = mqo.optimise(plans);
+		for (int i = 0; i < optPlans.size(); i++) {
+			System.out.println("QUERY " + (i + 1) + ": " + optPlans.get(i));
+		}
+		for (java.util.Map.Entry<Operator, Integer> e : mqo.getShared().entrySet()) {
+			System.out.println("SHARED x" + e.getValue() + ": " + e.getKey());
+		}
+		System.out.println("BATCH COST " + mqo.getSharedCost() + " (" + mqo.getIndependentCost() + " unshared)");
+		System.out.println("PLAN CACHE " + planCache.getHits() + " hits, " + planCache.getMisses() + " misses");
+		System.out.println("RESULT CACHE " + resultCache.getHits() + " hits, " + resultCache.getUsed() + " values held");
 	}
 
+	/**
+	 * Store in the result cache the results that the plan materialises as it
+	 * runs anyway: the build side of each hash join
+	 */
+	private static void cacheResults(Operator op) {
+		for (Operator input : op.inputs) {
+			cacheResults(input);
+		}
+		if (op instanceof Join) {
+			JoinMethod method = ((Join) op).getMethod();
+			if (method == null || method == JoinMethod.HASH) {
+				resultCache.put(((Join) op).getLeft());
+			}
+		}
+	}
+
+	private static String readAll(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		StringBuilder sb = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Prune the zone map of each scan in the plan with the predicates pushed
+	 * down to it, as the Estimator does, and report the blocks skipped by
+	 * each scan and by all the scans of each relation
+	 */
+	private static void reportZoneMaps(Operator plan) {
+		Set<NamedRelation> pruned = new LinkedHashSet<NamedRelation>();
+		pruneZoneMaps(new Estimator(), plan, pruned);
+		for (NamedRelation reln : pruned) {
+			System.out.println("ZONEMAP " + reln + " TOTAL: skipped " + reln.getZoneMap().getSkippedBlocks() +
+					" blocks, read " + reln.getZoneMap().getReadBlocks());
+		}
+	}
+
+	private static void pruneZoneMaps(Estimator est, Operator op, Set<NamedRelation> pruned) {
+		List<Predicate> chain = new ArrayList<Predicate>();
+		Operator base = est.zoneMapBase(op, chain);
+		if (base != null) {
+			NamedRelation reln = Estimator.scannedRelation(base);
+			int skipped = reln.getZoneMap().prune(chain);
+			System.out.println("ZONEMAP " + reln + ": skipped " + skipped + " of " +
+					reln.getZoneMap().getBlockCount() + " blocks");
+			pruned.add(reln);
+			return;
+		}
+		for (Operator input : op.inputs) {
+			pruneZoneMaps(est, input, pruned);
+		}
+	}
 }
@@ -0,0 +1,65 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class represents a semi-join, which keeps the tuples of its left
+ * input that match at least one tuple of its right input on all of its
+ * predicates, or an anti-join, which keeps those that match none. Its
+ * output has the attributes of the left input only. A semi-join is
+ * evaluated by building a hash table on the right input and probing it
+ * with each tuple of the left input.
+ */
+public class SemiJoin extends BinaryOperator {
+	private List<Predicate> predicates;
+	private boolean anti;
+
+	/**
+	 * Create a new semi-join or anti-join.
+	 * @param left Left child operator, whose tuples are kept or dropped
+	 * @param right Right child operator, whose tuples are matched
+	 * @param predicates Join predicates (attr=attr), each with its left
+	 * attribute from the left input; with none, every left tuple matches
+	 * if the right input is not empty
+	 * @param anti True for an anti-join
+	 */
+	public SemiJoin(Operator left, Operator right, List<Predicate> predicates, boolean anti) {
+		super(left, right);
+		this.predicates = predicates;
+		this.anti = anti;
+	}
+
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	/**
+	 * @return true if this is an anti-join
+	 */
+	public boolean isAnti() {
+		return this.anti;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/**
+	 * @return the operator name and predicates, without the inputs
+	 */
+	public String label() {
+		String ret = (this.anti ? "ANTI JOIN [" : "SEMI JOIN [");
+		String sep = "";
+		for (Predicate p : this.predicates) {
+			ret += sep + p.toString();
+			sep = ",";
+		}
+		return ret + "]";
+	}
+
+	public String toString() {
+		return "(" + this.getLeft().toString() + ") " + label() +
+				" (" + this.getRight().toString() + ")";
+	}
+}
@@ -0,0 +1,137 @@
+package sjdb;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Plans a query with semi-joins or anti-joins (unnested subqueries, see Decorrelator)
+ * below its root projection. The join optimisers only know about selects, products and
+ * joins, so the enclosing query is optimised on its own, projected on the attributes of the
+ * root projection and those that the semi-joins test, and each subquery is optimised on its
+ * own as a query.
+ *
+ * A semi-join only drops tuples of its left input, so like a select it can be evaluated
+ * as soon as the attributes it tests are available: each semi-join is tried on top of the
+ * optimised plan and above every operator of it that outputs those attributes (except the
+ * right input of an index nested loop join, which is probed through an index), and is put
+ * where the Estimator finds the whole plan cheapest. Placed low, a selective semi-join
+ * shrinks the inputs of the joins above it; placed high, it probes once per result tuple.
+ */
+public class SemiJoinPlanner {
+
+    /**
+     * @return true if the plan has a semi-join, directly or below its root projection
+     */
+    public static boolean hasSemiJoin(Operator plan) {
+        if(plan instanceof Project) {
+            plan = ((Project) plan).getInput();
+        }
+        return plan instanceof SemiJoin;
+    }
+
+    /**
+     * Optimise a plan with semi-joins, using the given optimiser for the enclosing query and
+     * for each subquery
+     * @param plan Canonical query plan, decorrelated
+     * @param optimiser Join optimiser, applied to plans without semi-joins
+     * @return Optimised plan
+     */
+    public static Operator optimise(Operator plan, Function<Operator, Operator> optimiser) {
+        if(!hasSemiJoin(plan)) {
+            return optimiser.apply(plan);
+        }
+        Operator op = plan instanceof Project ? ((Project) plan).getInput() : plan;
+        List<SemiJoin> semiJoins = new ArrayList<>();
+        while(op instanceof SemiJoin) {
+            semiJoins.add(0, (SemiJoin) op);
+            op = ((SemiJoin) op).getLeft();
+        }
+        // the enclosing query keeps the attributes that the semi-joins test
+        Operator outer = op;
+        if(plan instanceof Project) {
+            List<Attribute> needed = new ArrayList<>(((Project) plan).getAttributes());
+            for(SemiJoin semi : semiJoins) {
+                for(Predicate p : semi.getPredicates()) {
+                    if(!needed.contains(p.getLeftAttribute())) {
+                        needed.add(p.getLeftAttribute());
+                    }
+                }
+            }
+            outer = new Project(op, needed);
+        }
+        Operator best = optimiser.apply(outer);
+
+        Estimator estimator = new Estimator();
+        for(SemiJoin semi : semiJoins) {
+            Operator subquery = optimiser.apply(semi.getRight());
+            best = place(best, semi, subquery, estimator);
+        }
+        if(plan instanceof Project) {
+            best = new Project(best, ((Project) plan).getAttributes());
+        }
+        best.accept(estimator);
+        return best;
+    }
+
+    /*
+     * the plan with the semi-join, on the optimised subquery, put where it is cheapest
+     */
+    private static Operator place(Operator plan, SemiJoin semi, Operator subquery, Estimator estimator) {
+        Operator best = copy(semi, plan, subquery);
+        int lowestCost = estimator.estimate(best);
+        List<Slot> slots = new ArrayList<>();
+        slots(plan, semi, slots);
+        Slot bestSlot = null;
+        for(Slot slot : slots) {
+            Operator input = slot.parent.inputs.get(slot.index);
+            slot.parent.inputs.set(slot.index, copy(semi, input, subquery));
+            int cost = estimator.estimate(plan);
+            if(cost < lowestCost) {
+                lowestCost = cost;
+                bestSlot = slot;
+            }
+            slot.parent.inputs.set(slot.index, input);
+        }
+        if(bestSlot == null) {
+            return best;
+        }
+        bestSlot.parent.inputs.set(bestSlot.index, copy(semi, bestSlot.parent.inputs.get(bestSlot.index), subquery));
+        estimator.estimate(plan);
+        return plan;
+    }
+
+    private static SemiJoin copy(SemiJoin semi, Operator left, Operator right) {
+        return new SemiJoin(left, right, semi.getPredicates(), semi.isAnti());
+    }
+
+    /*
+     * the inputs of the plan that output every attribute the semi-join tests, with the
+     * operator above each
+     */
+    private static void slots(Operator op, SemiJoin semi, List<Slot> slots) {
+        for(int i=0;i<op.inputs.size();i++) {
+            if(i == 1 && op instanceof Join && ((Join) op).getMethod() == JoinMethod.INDEX_NESTED_LOOP) {
+                continue;
+            }
+            Operator input = op.inputs.get(i);
+            boolean tested = true;
+            for(Predicate p : semi.getPredicates()) {
+                tested &= input.getOutput().getAttributes().contains(p.getLeftAttribute());
+            }
+            if(tested) {
+                slots.add(new Slot(op, i));
+            }
+            slots(input, semi, slots);
+        }
+    }
+
+    private static class Slot {
+        private final Operator parent;
+        private final int index;
+
+        private Slot(Operator parent, int index) {
+            this.parent = parent;
+            this.index = index;
+        }
+    }
+}
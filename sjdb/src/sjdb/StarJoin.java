@@ -0,0 +1,83 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements a star join, which joins a fact input with any
+ * number of dimension inputs, each on a predicate between a foreign key
+ * of the fact input and a key of the dimension. A hash table is built on
+ * each (filtered) dimension, and each fact tuple probes the dimensions in
+ * turn, most selective first, and is dropped at the first dimension with
+ * no match. No intermediate join result is ever built.
+ *
+ * The dimension inputs come before the fact input, so that every dimension
+ * is visited (and its hash table built) before the fact input is read, as
+ * a runtime filter over the fact input built from a dimension requires.
+ */
+public class StarJoin extends Operator {
+	private List<Predicate> predicates;
+
+	/**
+	 * Create a new star join
+	 * @param fact Fact input
+	 * @param dimensions Dimension inputs, in the order they are probed
+	 * @param predicates Join predicates, one per dimension, each with its
+	 * left attribute from the fact input and its right attribute from the
+	 * dimension
+	 */
+	public StarJoin(Operator fact, List<Operator> dimensions, List<Predicate> predicates) {
+		super();
+		for (Operator dimension : dimensions) {
+			addOperator(dimension);
+		}
+		addOperator(fact);
+		this.predicates = predicates;
+	}
+
+	/**
+	 * @return the fact input
+	 */
+	public Operator getFact() {
+		return this.inputs.get(this.inputs.size() - 1);
+	}
+
+	/**
+	 * @return the dimension inputs, in the order they are probed
+	 */
+	public List<Operator> getDimensions() {
+		return this.inputs.subList(0, this.inputs.size() - 1);
+	}
+
+	/**
+	 * @return the join predicates, one per dimension
+	 */
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/**
+	 * @return the operator name and predicates, without the inputs
+	 */
+	public String label() {
+		String ret = "STAR JOIN [";
+		String sep = "";
+		for (Predicate p : this.predicates) {
+			ret += sep + p.toString();
+			sep = ",";
+		}
+		return ret + "]";
+	}
+
+	public String toString() {
+		String ret = label() + " ";
+		for (Operator input : this.inputs) {
+			ret += "(" + input.toString() + ")";
+		}
+		return ret;
+	}
+}
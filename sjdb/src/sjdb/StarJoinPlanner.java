@@ -0,0 +1,111 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Considers a star join for a query whose join graph is a star: a large fact relation
+ * joined on its foreign keys to several smaller dimension relations, each of which is
+ * filtered by its own predicates. A plan of binary joins carries the fact tuples that
+ * match the first dimension into an intermediate result before the next dimension can
+ * filter them, and so on down the chain; a star join builds a hash table on each
+ * filtered dimension and probes all of them for each fact tuple, so it never builds an
+ * intermediate result.
+ *
+ * The dimensions are read through their cheapest access paths, with their predicates
+ * applied first, and are probed from the most selective to the least, so that most
+ * fact tuples are dropped after the fewest probes. A runtime filter over the key values
+ * of a filtered dimension is pushed down onto the scan of the fact relation, so that
+ * fact tuples whose foreign key matches nothing are dropped as they are read; as in
+ * RuntimeFilterPlanner, each filter is kept only if it makes the plan cheaper. The star
+ * join takes its dimensions before its fact input, so each dimension is built before
+ * the fact scan that tests its filter. The star join replaces the binary plan chosen
+ * by the optimiser when the Estimator finds it cheaper.
+ */
+public class StarJoinPlanner {
+    /**
+     * Return the cheaper of the binary plan and a star join of the whole query, if the
+     * query graph is a star
+     * @param graph Join graph of the query
+     * @param binary Optimised plan of binary joins
+     * @return Cheaper plan
+     */
+    public static Operator plan(QueryGraph graph, Operator binary) {
+        NamedRelation centre = graph.getStarCentre();
+        if(centre == null) {
+            return binary;
+        }
+        Estimator estimator = new Estimator();
+        int binaryCost = estimator.estimate(binary);
+        Operator fact = graph.leaf(centre, estimator);
+        List<Operator> dimensions = new ArrayList<>();
+        final Map<Operator, Predicate> predicates = new IdentityHashMap<>();
+        final Map<Operator, Double> selectivity = new IdentityHashMap<>();
+        for(NamedRelation reln : graph.getRelations()) {
+            if(reln == centre) {
+                continue;
+            }
+            Operator dimension = graph.leaf(reln, estimator);
+            Predicate p = graph.joinPredicates(fact, dimension).get(0);
+            int factValues = fact.getOutput().getAttribute(p.getLeftAttribute()).getValueCount();
+            int dimensionValues = dimension.getOutput().getAttribute(p.getRightAttribute()).getValueCount();
+            dimensions.add(dimension);
+            predicates.put(dimension, p);
+            selectivity.put(dimension, (double) dimension.getOutput().getTupleCount() / Math.max(1, Math.max(factValues, dimensionValues)));
+        }
+        // 选择性最强的维度先探测
+        dimensions.sort(Comparator.comparingDouble(selectivity::get));
+        List<Predicate> order = new ArrayList<>();
+        for(Operator dimension : dimensions) {
+            order.add(predicates.get(dimension));
+        }
+        Operator star = new StarJoin(fact, dimensions, order);
+        if(graph.getProjection() != null) {
+            star = new Project(star, graph.getProjection());
+        }
+        int cost = estimator.estimate(star);
+
+        // a filter over each dimension's keys, tested by the scan of the fact relation
+        for(Operator dimension : dimensions) {
+            Predicate p = predicates.get(dimension);
+            Slot slot = factScan(star);
+            Operator scan = slot.parent.inputs.get(slot.index);
+            int buildValues = dimension.getOutput().getAttribute(p.getRightAttribute()).getValueCount();
+            FilterType type = buildValues <= RuntimeFilterPlanner.KEYSET_LIMIT ? FilterType.KEYSET : FilterType.BLOOM;
+            slot.parent.inputs.set(slot.index, new RuntimeFilter(scan, dimension, p.getRightAttribute(), p.getLeftAttribute(), type));
+            int filtered = estimator.estimate(star);
+            if(filtered < cost) {
+                cost = filtered;
+            }else {
+                slot.parent.inputs.set(slot.index, scan);
+            }
+        }
+        if(cost < binaryCost) {
+            return star;
+        }
+        estimator.estimate(binary);
+        return binary;
+    }
+
+    /*
+     * the position of the scan of the fact relation, below the filters already placed on it
+     */
+    private static Slot factScan(Operator star) {
+        Operator parent = star instanceof Project ? ((Project) star).getInput() : star;
+        int index = parent.inputs.size() - 1;
+        while(parent.inputs.get(index) instanceof UnaryOperator) {
+            parent = parent.inputs.get(index);
+            index = 0;
+        }
+        return new Slot(parent, index);
+    }
+
+    private static class Slot {
+        private final Operator parent;
+        private final int index;
+
+        private Slot(Operator parent, int index) {
+            this.parent = parent;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package sjdb;
+
+/**
+ * This class implements a Top-K operator, which outputs the first tuples of
+ * its input in the order of an attribute, up to a given count. It keeps the
+ * best tuples seen so far in a heap of at most that many tuples, so that
+ * it never sorts its whole input; if its input already arrives in the
+ * (ascending) order asked for, it acts as a limit instead.
+ *
+ * A Top-K without a count (Integer.MAX_VALUE) sorts its whole input.
+ */
+public class TopK extends UnaryOperator {
+	private Attribute attribute;
+	private boolean descending;
+	private int count;
+
+	/**
+	 * Create a new top-k
+	 * @param input Child operator
+	 * @param attribute Attribute to order the tuples on
+	 * @param descending true to output the largest values first
+	 * @param count Largest number of tuples output
+	 */
+	public TopK(Operator input, Attribute attribute, boolean descending, int count) {
+		super(input);
+		this.attribute = attribute;
+		this.descending = descending;
+		this.count = count;
+	}
+
+	/**
+	 * @return the attribute the tuples are ordered on
+	 */
+	public Attribute getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * @return true if the largest values come first
+	 */
+	public boolean isDescending() {
+		return this.descending;
+	}
+
+	/**
+	 * @return the largest number of tuples output
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/**
+	 * @return the operator name, order and count, without the input
+	 */
+	public String label() {
+		String order = "[" + this.attribute.getName() + (this.descending ? " DESC" : "") + "]";
+		return this.count == Integer.MAX_VALUE ? "SORT " + order : "TOPK " + this.count + " " + order;
+	}
+
+	public String toString() {
+		return label() + " (" + getInput().toString() + ")";
+	}
+}
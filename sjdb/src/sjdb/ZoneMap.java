@@ -0,0 +1,157 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the zone map of a named relation: for each block
+ * of the relation's tuples, the smallest and largest value of each
+ * attribute in the block and the number of its tuples whose value is
+ * null. A scan with attr=value predicates pushed down to it only needs to
+ * read the blocks whose ranges contain all the values; the others are
+ * skipped.
+ *
+ * Values are compared as numbers if both are numbers, and as strings
+ * otherwise. A null never satisfies attr=value.
+ */
+public class ZoneMap {
+	private List<Block> blocks;
+	private int skippedBlocks;
+	private int readBlocks;
+
+	/**
+	 * Create an empty zone map
+	 */
+	public ZoneMap() {
+		this.blocks = new ArrayList<Block>();
+	}
+
+	/**
+	 * Add a block to the zone map
+	 * @param tuples Number of tuples in the block
+	 * @return Index of the new block
+	 */
+	public int addBlock(int tuples) {
+		this.blocks.add(new Block(tuples));
+		return this.blocks.size() - 1;
+	}
+
+	/**
+	 * Record the synopsis of an attribute in a block
+	 * @param block Index of the block
+	 * @param attribute Attribute
+	 * @param min Smallest value of the attribute in the block
+	 * @param max Largest value of the attribute in the block
+	 * @param nulls Number of tuples in the block whose value is null
+	 */
+	public void addSynopsis(int block, Attribute attribute, String min, String max, int nulls) {
+		this.blocks.get(block).synopses.put(attribute.getName(), new Synopsis(min, max, nulls));
+	}
+
+	/**
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return this.blocks.size();
+	}
+
+	/**
+	 * Return the number of tuples in the blocks that may contain tuples
+	 * satisfying all the given predicates; predicates that are not of the
+	 * form attr=value, or on attributes without synopses, skip no block
+	 * @param predicates Predicates pushed down to a scan
+	 * @return Tuples in the blocks that must be read
+	 */
+	public int survivingTuples(List<Predicate> predicates) {
+		int tuples = 0;
+		for (Block block : this.blocks) {
+			if (block.mayMatch(predicates)) {
+				tuples += block.tuples;
+			}
+		}
+		return tuples;
+	}
+
+	/**
+	 * Skip the blocks of a scan with the given predicates pushed down to
+	 * it, adding to the counts of blocks skipped and read
+	 * @param predicates Predicates pushed down to the scan
+	 * @return Number of blocks skipped
+	 */
+	public int prune(List<Predicate> predicates) {
+		int skipped = 0;
+		for (Block block : this.blocks) {
+			if (!block.mayMatch(predicates)) {
+				skipped++;
+			}
+		}
+		this.skippedBlocks += skipped;
+		this.readBlocks += this.blocks.size() - skipped;
+		return skipped;
+	}
+
+	/**
+	 * @return the number of blocks skipped by scans so far
+	 */
+	public int getSkippedBlocks() {
+		return this.skippedBlocks;
+	}
+
+	/**
+	 * @return the number of blocks read by scans so far
+	 */
+	public int getReadBlocks() {
+		return this.readBlocks;
+	}
+
+	private static int compare(String a, String b) {
+		try {
+			return Long.compare(Long.parseLong(a), Long.parseLong(b));
+		} catch (NumberFormatException e) {
+			return a.compareTo(b);
+		}
+	}
+
+	private static class Block {
+		private int tuples;
+		private Map<String, Synopsis> synopses = new HashMap<String, Synopsis>();
+
+		private Block(int tuples) {
+			this.tuples = tuples;
+		}
+
+		private boolean mayMatch(List<Predicate> predicates) {
+			for (Predicate p : predicates) {
+				if (!p.equalsValue()) {
+					continue;
+				}
+				Synopsis s = this.synopses.get(p.getLeftAttribute().getName());
+				if (s != null && !s.mayContain(p.getRightValue(), this.tuples)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static class Synopsis {
+		private String min;
+		private String max;
+		private int nulls;
+
+		private Synopsis(String min, String max, int nulls) {
+			this.min = min;
+			this.max = max;
+			this.nulls = nulls;
+		}
+
+		private boolean mayContain(String value, int tuples) {
+			if (this.nulls >= tuples) {
+				return false;
+			}
+			return compare(this.min, value) <= 0 && compare(value, this.max) <= 0;
+		}
+	}
+}